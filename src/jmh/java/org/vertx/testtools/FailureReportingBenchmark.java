@@ -0,0 +1,69 @@
+package org.vertx.testtools;
+/*
+ * Copyright 2013 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+import org.junit.ComparisonFailure;
+import org.openjdk.jmh.annotations.*;
+import org.vertx.java.core.json.JsonObject;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of reporting a failure from a test verticle to the runner: encoding the Throwable, the JSON
+ * round trip the event bus makes, and rebuilding it in the runner.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FailureReportingBenchmark {
+
+  private Throwable failure;
+  private JsonObject encoded;
+
+  @Setup
+  public void setUp() {
+    Exception cause = new IllegalStateException("Connection refused");
+    cause.addSuppressed(new RuntimeException("Failed to close"));
+    failure = new AssertionError("Request failed");
+    failure.initCause(cause);
+    encoded = ThrowableCodec.encode(failure);
+  }
+
+  @Benchmark
+  public JsonObject encode() {
+    return ThrowableCodec.encode(failure);
+  }
+
+  @Benchmark
+  public Throwable decode() {
+    return ThrowableCodec.decode(encoded);
+  }
+
+  @Benchmark
+  public Throwable comparisonFailure() {
+    return ThrowableCodec.decode(ThrowableCodec.encode(new ComparisonFailure("Bodies differ", "expected", "actual")));
+  }
+
+  @Benchmark
+  public Throwable roundTrip() {
+    JsonObject msg = new JsonObject().putString("type", "failure").putObject("failure", ThrowableCodec.encode(failure));
+    return ThrowableCodec.decode(new JsonObject(msg.encode()).getObject("failure"));
+  }
+}
@@ -0,0 +1,167 @@
+package org.vertx.testtools;
+/*
+ * Copyright 2013 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+import org.openjdk.jmh.annotations.*;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.AsyncResultHandler;
+import org.vertx.java.platform.PlatformManager;
+import org.vertx.java.platform.Verticle;
+
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Measures the overhead the runner adds to each test: deploying and undeploying a verticle on a pooled
+ * PlatformManager, and running a class of tests that do nothing but complete.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HarnessBenchmark {
+
+  private PlatformManager mgr;
+  private URL[] classpath;
+  private JUnitCore junit;
+
+  @Setup
+  public void setUp() {
+    mgr = PlatformManagerPool.acquire();
+    classpath = new URL[] {HarnessBenchmark.class.getProtectionDomain().getCodeSource().getLocation()};
+    junit = new JUnitCore();
+  }
+
+  @TearDown
+  public void tearDown() {
+    PlatformManagerPool.release(mgr);
+  }
+
+  @Benchmark
+  public void deployUndeploy() throws Exception {
+    final CountDownLatch deployed = new CountDownLatch(1);
+    final AtomicReference<AsyncResult<String>> deployment = new AtomicReference<>();
+    mgr.deployVerticle(EmptyVerticle.class.getName(), null, classpath, 1, null, new AsyncResultHandler<String>() {
+      public void handle(AsyncResult<String> ar) {
+        deployment.set(ar);
+        deployed.countDown();
+      }
+    });
+    deployed.await();
+    if (deployment.get().failed()) {
+      throw new IllegalStateException(deployment.get().cause());
+    }
+    final CountDownLatch undeployed = new CountDownLatch(1);
+    mgr.undeploy(deployment.get().result(), new AsyncResultHandler<Void>() {
+      public void handle(AsyncResult<Void> ar) {
+        undeployed.countDown();
+      }
+    });
+    undeployed.await();
+  }
+
+  /**
+   * Time for a class of {@link EmptyTests#TESTS} tests, divide by that for the overhead per test
+   */
+  @Benchmark
+  public Result emptyTests() {
+    return check(junit.run(EmptyTests.class));
+  }
+
+  @Benchmark
+  public Result emptyTestsDeployedPerClass() {
+    return check(junit.run(EmptyTestsDeployedPerClass.class));
+  }
+
+  private static Result check(Result result) {
+    if (!result.wasSuccessful()) {
+      Failure failure = result.getFailures().get(0);
+      throw new IllegalStateException(failure.getMessage(), failure.getException());
+    }
+    return result;
+  }
+
+  public static class EmptyVerticle extends Verticle {
+  }
+
+  public static class EmptyTests extends TestVerticle {
+
+    static final int TESTS = 10;
+
+    @Test
+    public void test0() {
+      VertxAssert.testComplete();
+    }
+
+    @Test
+    public void test1() {
+      VertxAssert.testComplete();
+    }
+
+    @Test
+    public void test2() {
+      VertxAssert.testComplete();
+    }
+
+    @Test
+    public void test3() {
+      VertxAssert.testComplete();
+    }
+
+    @Test
+    public void test4() {
+      VertxAssert.testComplete();
+    }
+
+    @Test
+    public void test5() {
+      VertxAssert.testComplete();
+    }
+
+    @Test
+    public void test6() {
+      VertxAssert.testComplete();
+    }
+
+    @Test
+    public void test7() {
+      VertxAssert.testComplete();
+    }
+
+    @Test
+    public void test8() {
+      VertxAssert.testComplete();
+    }
+
+    @Test
+    public void test9() {
+      VertxAssert.testComplete();
+    }
+  }
+
+  @TestVerticleInfo(deployPerClass = true)
+  public static class EmptyTestsDeployedPerClass extends EmptyTests {
+  }
+}
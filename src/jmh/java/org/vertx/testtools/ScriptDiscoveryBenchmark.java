@@ -0,0 +1,94 @@
+package org.vertx.testtools;
+/*
+ * Copyright 2013 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Measures finding the test functions of a directory of scripts as ScriptClassRunner does, both when every script
+ * has to be scanned and when they are all in the index already.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScriptDiscoveryBenchmark {
+
+  private static final Pattern FUNC_PATTERN = Pattern.compile("function[\\s]+(test[^\\s(]+)");
+
+  @Param({"100", "1000"})
+  public int scripts;
+
+  private File dir;
+  private final List<File> files = new ArrayList<>();
+  private ScriptIndex warm;
+
+  @Setup
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("scripts").toFile();
+    for (int i = 0; i < scripts; i++) {
+      File file = new File(dir, "test_" + i + ".js");
+      try (Writer writer = new FileWriter(file)) {
+        for (int j = 0; j < 20; j++) {
+          writer.write("function test" + j + "() {\n  vassert.assertEquals(" + j + ", " + j + ");\n" +
+              "  vassert.testComplete();\n}\n\n");
+        }
+      }
+      files.add(file);
+    }
+    warm = new ScriptIndex(new File(dir, "index.properties"));
+    scan(warm);
+  }
+
+  @TearDown
+  public void tearDown() {
+    for (File file: dir.listFiles()) {
+      file.delete();
+    }
+    dir.delete();
+  }
+
+  @Benchmark
+  public int cold() throws IOException {
+    return scan(new ScriptIndex(new File(dir, "missing.properties")));
+  }
+
+  @Benchmark
+  public int warm() throws IOException {
+    return scan(warm);
+  }
+
+  private int scan(ScriptIndex index) throws IOException {
+    int count = 0;
+    for (File file: files) {
+      count += index.functions(file, FUNC_PATTERN).size();
+    }
+    return count;
+  }
+}
@@ -0,0 +1,132 @@
+package org.vertx.testtools;
+/*
+ * Copyright 2013 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long TestDnsServer takes to answer an A query over UDP, and a query whose answer doesn't fit in a
+ * UDP response so that it has to be asked again over TCP.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TestDnsServerBenchmark {
+
+  // Enough A records for the answer to be larger than a UDP response
+  private static final int LARGE_ANSWER_RECORDS = 64;
+
+  private TestDnsServer server;
+  private TestDnsServer largeServer;
+  private DatagramSocket socket;
+  private DatagramPacket query;
+  private DatagramPacket largeQuery;
+  private final DatagramPacket response = new DatagramPacket(new byte[512], 512);
+  private short id;
+
+  @Setup
+  public void setUp() throws IOException {
+    server = TestDnsServer.testResolveA("10.0.0.1").port(0);
+    server.start();
+    socket = new DatagramSocket();
+    socket.setSoTimeout(5000);
+    byte[] bytes = query("dns.vertx.io");
+    query = new DatagramPacket(bytes, bytes.length, InetAddress.getByName("127.0.0.1"), server.getPort());
+
+    TestDnsZone.Builder zone = TestDnsZone.builder();
+    for (int i = 0; i < LARGE_ANSWER_RECORDS; i++) {
+      zone.a("large.vertx.io", "10.0.0." + (i + 1));
+    }
+    largeServer = TestDnsServer.testZone(zone.build()).port(0);
+    largeServer.start();
+    bytes = query("large.vertx.io");
+    largeQuery = new DatagramPacket(bytes, bytes.length, InetAddress.getByName("127.0.0.1"), largeServer.getPort());
+  }
+
+  @TearDown
+  public void tearDown() {
+    socket.close();
+    server.stop();
+    largeServer.stop();
+  }
+
+  @Benchmark
+  public int resolveA() throws IOException {
+    return sendUdp(query);
+  }
+
+  @Benchmark
+  public int resolveTruncatedThenTcp() throws IOException {
+    sendUdp(largeQuery);
+    if ((response.getData()[2] & 2) == 0) {
+      throw new IllegalStateException("Response was not truncated");
+    }
+    // Ask again over a new connection, as a resolver falling back to TCP would
+    byte[] bytes = largeQuery.getData();
+    try (Socket tcp = new Socket(largeQuery.getAddress(), largeQuery.getPort())) {
+      DataOutputStream out = new DataOutputStream(tcp.getOutputStream());
+      out.writeShort(largeQuery.getLength());
+      out.write(bytes, 0, largeQuery.getLength());
+      out.flush();
+      DataInputStream in = new DataInputStream(tcp.getInputStream());
+      byte[] answer = new byte[in.readUnsignedShort()];
+      in.readFully(answer);
+      return answer.length;
+    }
+  }
+
+  private int sendUdp(DatagramPacket query) throws IOException {
+    // A new id each time so a late answer to a previous query can't be mistaken for this one
+    byte[] bytes = query.getData();
+    id++;
+    bytes[0] = (byte)(id >> 8);
+    bytes[1] = (byte)id;
+    socket.send(query);
+    do {
+      response.setLength(512);
+      socket.receive(response);
+    } while (response.getData()[0] != bytes[0] || response.getData()[1] != bytes[1]);
+    return response.getLength();
+  }
+
+  private static byte[] query(String name) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    // Header: id, recursion desired, one question
+    out.write(new byte[] {0, 0, 1, 0, 0, 1, 0, 0, 0, 0, 0, 0}, 0, 12);
+    for (String label: name.split("\\.")) {
+      out.write(label.length());
+      out.write(label.getBytes(), 0, label.length());
+    }
+    out.write(0);
+    // Type A, class IN
+    out.write(new byte[] {0, 1, 0, 1}, 0, 4);
+    return out.toByteArray();
+  }
+}
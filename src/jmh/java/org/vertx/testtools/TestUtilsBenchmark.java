@@ -0,0 +1,57 @@
+package org.vertx.testtools;
+/*
+ * Copyright 2013 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+import org.openjdk.jmh.annotations.*;
+import org.vertx.java.core.buffer.Buffer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the random data generators tests use to build payloads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TestUtilsBenchmark {
+
+  @Param({"64", "4096", "65536"})
+  public int length;
+
+  @Benchmark
+  public byte[] randomByteArray() {
+    return TestUtils.generateRandomByteArray(length);
+  }
+
+  @Benchmark
+  public Buffer randomBufferAvoiding() {
+    return TestUtils.generateRandomBuffer(length, true, (byte)'\n');
+  }
+
+  @Benchmark
+  public String randomUnicodeString() {
+    return TestUtils.randomUnicodeString(length);
+  }
+
+  @Benchmark
+  public String randomAlphaString() {
+    return TestUtils.randomAlphaString(length);
+  }
+}
@@ -18,33 +18,49 @@ package org.vertx.testtools;
  */
 
 import org.junit.Ignore;
+import org.junit.Test;
 import org.junit.runner.Description;
 import org.junit.runner.notification.Failure;
 import org.junit.runner.notification.RunNotifier;
 import org.junit.runners.BlockJUnit4ClassRunner;
 import org.junit.runners.model.FrameworkMethod;
 import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.RunnerScheduler;
 import org.vertx.java.core.AsyncResult;
 import org.vertx.java.core.AsyncResultHandler;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.eventbus.EventBus;
 import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.impl.DefaultFutureResult;
+import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonObject;
 import org.vertx.java.core.logging.Logger;
 import org.vertx.java.core.logging.impl.LoggerFactory;
-import org.vertx.java.platform.PlatformLocator;
 import org.vertx.java.platform.PlatformManager;
 
 import java.io.*;
 import java.lang.annotation.Annotation;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Properties;
-import java.util.Scanner;
+import java.util.Map;
+import java.util.UUID;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -54,6 +70,30 @@ import java.util.concurrent.atomic.AtomicReference;
  * Any failures are propagated from the container back to this test runner using the Vert.x event bus where they
  * are rethrown to appear to have occurred locally.
  *
+ * By default test methods are run one after the other. Setting {@link TestVerticleInfo#concurrency()} or the
+ * <code>vertx.test.concurrency</code> system property to a value greater than one deploys up to that many test
+ * verticles at once on the same platform manager.
+ *
+ * Each runner registers a single handler for the lifetime of the class. The address and an id for the test are
+ * passed to the test verticle in its config, and results are routed to the right test by that id. Results reported
+ * from outside the context of the test verticle arrive without an id and can only be routed while a single test is
+ * running; when several are, they all fail rather than wait for a result that can't be told apart.
+ *
+ * Setting {@link TestVerticleInfo#deployPerClass()} or the <code>vertx.test.deployPerClass</code> system property
+ * deploys the test verticle only once for the class instead of once per test method. The runner then sends the
+ * verticle a message for each test to run once it has called {@link TestVerticle#startTests()}, which may be after
+ * <code>start()</code> returns, and undeploys it when the class is done. This saves the deployment cost
+ * for each test, but the tests share the verticle instance and any state it holds, and always run one at a time.
+ *
+ * Each test must complete within <code>vertx.test.timeout</code> seconds unless a different timeout is set for it, see
+ * {@link #getTimeoutMillis(FrameworkMethod)}. A test that times out fails with the stacks of the Vert.x event loop
+ * threads attached.
+ *
+ * How long each test took to deploy, run and undeploy is added to the Description it is reported finished with as
+ * {@link TestTimings}, and written for each class to <code>test-timings</code> in the build directory unless
+ * <code>vertx.test.timings</code> is set to false. A summary of them can be printed at the end of each class and of
+ * the JVM, see {@link TestSummary}.
+ *
  * @author <a href="http://tfox.org">Tim Fox</a>
  *
  */
@@ -69,86 +109,124 @@ public class JavaClassRunner extends BlockJUnit4ClassRunner {
     String timeout = System.getProperty("vertx.test.timeout");
     TIMEOUT = timeout == null ? DEFAULT_TIMEOUT : Long.valueOf(timeout);
   }
+  private static final boolean ADAPTIVE_TIMEOUT = Boolean.getBoolean("vertx.test.timeout.adaptive");
+  private static final boolean SAVE_TIMINGS = Boolean.parseBoolean(System.getProperty("vertx.test.timings", "true"));
 
-  private final PlatformManager mgr;
+  private PlatformManager mgr;
+  private final int concurrency;
+  private final boolean deployPerClass;
+  private final Map<String, SharedDeployment> sharedDeployments = new HashMap<>();
+  // The non jar classpath entries of each platform classloader, see getPlatformClassPath
+  private static final Map<ClassLoader, List<URL>> platformClassPaths = new WeakHashMap<>();
+  // All tests of this runner report to a single address, the test id in each message tells us which test it's for
+  private final String handlerAddress = TESTRUNNER_HANDLER_ADDRESS + "." + UUID.randomUUID();
+  private final Map<String, Completion<Void>> pending = new ConcurrentHashMap<>();
+  // The shared deployments that haven't yet said they're ready to run tests, keyed by run address
+  private final Map<String, Completion<Void>> starting = new ConcurrentHashMap<>();
+  private final JsonArray timings = new JsonArray();
+  private final TestSummary summary = new TestSummary();
+  private final Handler<Message<JsonObject>> dispatcher = new Handler<Message<JsonObject>>() {
+    @Override
+    public void handle(Message<JsonObject> msg) {
+      JsonObject jmsg = msg.body();
+      if ("ready".equals(jmsg.getString("type"))) {
+        Completion<Void> ready = starting.get(jmsg.getString("runAddress"));
+        if (ready != null) {
+          ready.handle(new DefaultFutureResult<Void>((Void)null));
+        } else {
+          log.warn("Received ready message for unknown deployment: " + jmsg);
+        }
+        return;
+      }
+      String testId = jmsg.getString("testId");
+      Completion<Void> result;
+      if (testId != null) {
+        result = pending.get(testId);
+      } else if (pending.size() == 1) {
+        result = pending.values().iterator().next();
+      } else if (pending.size() > 1) {
+        // Rather than leave every running test to time out, fail them all so the cause is obvious
+        AssertionError error = new AssertionError("Test result could not be attributed to a test; running tests " +
+            "concurrently requires reporting from the test verticle's context: " + jmsg);
+        for (Completion<Void> completion: pending.values()) {
+          completion.handle(new DefaultFutureResult<Void>(error));
+        }
+        return;
+      } else {
+        result = null;
+      }
+      if (result == null) {
+        log.warn("Received test result for unknown test: " + jmsg);
+        return;
+      }
+      Number sent = jmsg.getNumber("sent");
+      if (sent != null) {
+        result.eventBusNanos = System.nanoTime() - sent.longValue();
+      }
+      String type = jmsg.getString("type");
+      if ("failure".equals(type)) {
+        Throwable t = ThrowableCodec.decode(jmsg.getObject("failure"));
+        // We display this since otherwise Gradle doesn't display it to stdout/stderr
+        t.printStackTrace();
+        result.handle(new DefaultFutureResult<Void>(t));
+      } else {
+        result.handle(new DefaultFutureResult<Void>((Void)null));
+      }
+    }
+  };
   protected String main;
   private TestVerticleInfo annotation;
 
   public JavaClassRunner(Class<?> klass) throws InitializationError {
     super(klass);
-    setTestProperties();
-    mgr = PlatformLocator.factory.createPlatformManager();
-  }
-
-  private void setTestProperties() {
     // We set the properties here, rather than letting the build script do it
     // This means tests can run directly in an IDE with the correct properties set
     // without having to create custom test configurations
-    String modsDir = null;
-    File propsFile = new File("vertx.properties");
-    if (propsFile.exists()) {
-      loadProps(propsFile);
-    } else {
-      propsFile = new File("gradle.properties");
-      if (propsFile.exists()) {
-        loadProps(propsFile);
-        modsDir = "build/mods";
-      } else {
-        File pom = new File("pom.xml");
-        if (pom.exists()) {
-          try (Scanner scanner = new Scanner(pom).useDelimiter("\\A")) {
-            String data = scanner.next();
-            String modOwner = extractTag(data, "groupId");
-            String modName = extractTag(data, "artifactId");
-            String version = extractTag(data, "version");
-            setModuleNameProp(modOwner, modName, version);
-          } catch (FileNotFoundException e) {
-            //Ignore
-          }
-          modsDir = "target/mods";
-        }
-      }
+    ProjectProperties.instance();
+    deployPerClass = isDeployPerClass();
+    // A shared verticle can only run one test at a time, otherwise we can't tell which test an assertion is for
+    concurrency = deployPerClass ? 1 : getConcurrency();
+    if (concurrency > 1) {
+      setScheduler(new ConcurrentScheduler(concurrency));
     }
-    if (System.getProperty("vertx.mods") == null && modsDir != null) {
-      System.setProperty("vertx.mods", modsDir);
+  }
+
+  /**
+   * @return the maximum number of test methods of this class that may run at the same time
+   */
+  protected int getConcurrency() {
+    TestVerticleInfo annotation = getAnnotation();
+    if (annotation != null && annotation.concurrency() > 0) {
+      return annotation.concurrency();
     }
-    System.setProperty("vertx.idedirs", "true");
+    String concurrency = System.getProperty("vertx.test.concurrency");
+    return concurrency == null ? 1 : Integer.valueOf(concurrency);
   }
 
-  private void setModuleNameProp(String modOwner, String modName, String version) {
-    String moduleName= modOwner + "~" + modName + "~" + version;
-    System.setProperty("vertx.modulename", moduleName);
+  /**
+   * @return true if the test verticle should be deployed once for the whole class rather than once per test method
+   */
+  protected boolean isDeployPerClass() {
+    TestVerticleInfo annotation = getAnnotation();
+    if (annotation != null && annotation.deployPerClass()) {
+      return true;
+    }
+    return Boolean.getBoolean("vertx.test.deployPerClass");
   }
 
-  private String extractTag(String data, String tag) {
-    // This will extract the _first_ instance of the tag it finds in the data
-    // Need to make sure groupId, artifactId, version are at the _top_ of the file before any
-    // other instances of those tags!!
-    // Yes, we could use an XML parser but this is a lot simpler.
-    int pos = data.indexOf("<" + tag + ">");
-    int endPos = data.indexOf("</" + tag + ">");
-    String value = data.substring(pos + tag.length() + 2, endPos);
-    return value;
+  /**
+   * @return true if the test method should be run on the deployment shared with the other tests with the same main
+   * and classpath rather than on a deployment of its own
+   */
+  protected boolean isDeployShared(FrameworkMethod method) {
+    return deployPerClass;
   }
 
-  private void loadProps(File propsFile) {
-    // We set the properties here, rather than letting the build script do it
-    // This means tests can run directly in an IDE with the correct properties set
-    // without having to create custom test configurations
-    Properties props = new Properties();
-    try (InputStream is = new FileInputStream(propsFile.getName())) {
-      props.load(is);
-      for (String propName: props.stringPropertyNames()) {
-        String propVal = props.getProperty(propName);
-        System.setProperty("vertx." + propName, propVal);
-      }
-      String modOwner = props.getProperty("modowner");
-      if (modOwner != null) {
-        setModuleNameProp(modOwner, props.getProperty("modname"), props.getProperty("version"));
-      }
-    } catch (IOException e) {
-      log.error("Failed to load props file", e);
-    }
+  /**
+   * @return the directory the build writes its output to, target for Maven projects and build otherwise
+   */
+  protected static File getBuildDir() {
+    return new File(!new File("build.gradle").exists() && new File("pom.xml").exists() ? "target" : "build");
   }
 
   protected TestVerticleInfo getAnnotation() {
@@ -189,10 +267,60 @@ public class JavaClassRunner extends BlockJUnit4ClassRunner {
     return methodName;
   }
 
+  /**
+   * @return the classpath entry to deploy the test with, by default the one for its name
+   */
+  protected URL getClassPath(FrameworkMethod method) {
+    return getClassPath(method.getName());
+  }
+
+  /**
+   * @return the main to deploy the test with, by default the one for its name
+   */
+  protected String getMain(FrameworkMethod method) {
+    return getMain(method.getName());
+  }
+
+  /**
+   * @return the name the test verticle knows the test by, by default the one for its name
+   */
+  public String getActualMethodName(FrameworkMethod method) {
+    return getActualMethodName(method.getName());
+  }
+
+  @Override
+  public void run(RunNotifier notifier) {
+    // The platform manager is borrowed for the duration of the class so it can be reused by the next one
+    mgr = PlatformManagerPool.acquire();
+    EventBus eb = mgr.vertx().eventBus();
+    eb.registerHandler(handlerAddress, dispatcher);
+    // Tests that initialise VertxAssert without an address (e.g. script tests), or report from another context,
+    // report to the shared address
+    eb.registerHandler(TESTRUNNER_HANDLER_ADDRESS, dispatcher);
+    try {
+      super.run(notifier);
+      undeploySharedDeployments(notifier);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      if (ADAPTIVE_TIMEOUT) {
+        TestDurations.instance().save();
+      }
+      if (SAVE_TIMINGS) {
+        saveTimings();
+      }
+      if (TestSummary.TOP > 0 && summary.size() > 0) {
+        System.out.print("Finished " + getTestClass().getName() + "\n" + summary.format(TestSummary.TOP));
+      }
+      eb.unregisterHandler(handlerAddress, dispatcher);
+      eb.unregisterHandler(TESTRUNNER_HANDLER_ADDRESS, dispatcher);
+      PlatformManagerPool.release(mgr);
+    }
+  }
+
   @Override
   protected void runChild(FrameworkMethod method, RunNotifier notifier) {
     Class<?> testClass = getTestClass().getJavaClass();
-    String methodName = method.getName();
     String testDesc = method.getName();
     Description desc = Description.createTestDescription(testClass, testDesc);
     if (method.getAnnotation(Ignore.class) != null) {
@@ -200,43 +328,10 @@ public class JavaClassRunner extends BlockJUnit4ClassRunner {
         return;
     }
     notifier.fireTestStarted(desc);
-    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    String testId = UUID.randomUUID().toString();
+    Completion<Void> completion = new Completion<>();
+    pending.put(testId, completion);
     try {
-      JsonObject conf = new JsonObject().putString("methodName", getActualMethodName(methodName));
-      final CountDownLatch testLatch = new CountDownLatch(1);
-      Handler<Message<JsonObject>> handler = new Handler<Message<JsonObject>>() {
-        @Override
-        public void handle(Message<JsonObject> msg) {
-          JsonObject jmsg = msg.body();
-          String type = jmsg.getString("type");
-          try {
-            switch (type) {
-            case "done":
-              break;
-            case "failure":
-              byte[] bytes = jmsg.getBinary("failure");
-              // Deserialize
-              ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
-              Throwable t = (Throwable)ois.readObject();
-              // We display this since otherwise Gradle doesn't display it to stdout/stderr
-              t.printStackTrace();
-              failure.set(t);
-              break;
-            }
-          } catch (ClassNotFoundException | IOException e) {
-            e.printStackTrace();
-            failure.set(e);
-          }
-          finally {
-            testLatch.countDown();
-          }
-        }
-      };
-
-      EventBus eb = mgr.vertx().eventBus();
-      eb.registerHandler(TESTRUNNER_HANDLER_ADDRESS, handler);
-      final CountDownLatch deployLatch = new CountDownLatch(1);
-      final AtomicReference<String> deploymentIDRef = new AtomicReference<>();
       String includes;
       TestVerticleInfo annotation = getAnnotation();
       if (annotation != null) {
@@ -248,93 +343,440 @@ public class JavaClassRunner extends BlockJUnit4ClassRunner {
         includes = null;
       }
       System.out.println("Starting test: " + testDesc);
-      String main = getMain(methodName);
-      URL cp = getClassPath(methodName);
+      String main = getMain(method);
+      URL cp = getClassPath(method);
       List<URL> urls = new ArrayList<>();
       if (cp != null) {
         urls.add(cp);
       }
-      ClassLoader pcl = Thread.currentThread().getContextClassLoader();
-      /*
-      We need to add entries from the platform classloader to the module classloader that's created for the verticle that
-      we deploy.
-      This is especially important if there are tests which deploy Groovy compiled Verticles that are not in the module
-      under test.
-      In this case the Groovy compiled verticle classes will be on the platform classloader. When the test verticle
-      tries to deploy the Groovy compiled verticle it will be found on the platform classloader not the module classloader
-      and that classloader will then try to load the org.vertx.groovy.platform.Verticle class which it won't find since
-      this is only available in the Groovy lang module.
-      To solve this we must add the non jar classpath entries of the platform classloader to the module classloader of
-      the test verticle so that they are loaded from there and it then also tries to load org.vertx.groovy.platform.Verticle
-      from there which it will now find since the Groovy lang module is a parent (included) by the test verticle module
-      classloader
-       */
-      if (pcl != null && pcl instanceof URLClassLoader) {
-        URLClassLoader upcl = (URLClassLoader)pcl;
-        for (URL url: upcl.getURLs()) {
-          String surl = url.toString();
-          if (!surl.endsWith(".jar") && !surl.endsWith(".zip")) {
-            urls.add(url);
+      urls.addAll(getPlatformClassPath(Thread.currentThread().getContextClassLoader()));
+      URL[] classpath = urls.toArray(new URL[urls.size()]);
+      long timeout = getTimeoutMillis(method);
+      long deployNanos = 0;
+      long runNanos = 0;
+      long undeployNanos = 0;
+      if (isDeployShared(method)) {
+        long start = System.nanoTime();
+        SharedDeployment deployment = getSharedDeployment(main, classpath, includes, notifier);
+        deployNanos = System.nanoTime() - start;
+        if (deployment.deployThrowable != null) {
+          notifier.fireTestFailure(new Failure(desc, deployment.deployThrowable));
+        } else {
+          JsonObject run = new JsonObject().putString("methodName", getActualMethodName(method))
+              .putString("testId", testId);
+          start = System.nanoTime();
+          mgr.vertx().eventBus().send(deployment.runAddress, run);
+          AsyncResult<Void> testResult = awaitTest(method, completion, timeout);
+          runNanos = System.nanoTime() - start;
+          if (testResult.failed()) {
+            notifier.fireTestFailure(new Failure(desc, testResult.cause()));
           }
         }
-      }
-      final AtomicReference<Throwable> deployThrowable = new AtomicReference<>();
-      mgr.deployVerticle(main, conf, urls.toArray(new URL[urls.size()]), 1, includes, new AsyncResultHandler<String>() {
-        public void handle(AsyncResult<String> ar) {
-          if (ar.succeeded()) {
-            deploymentIDRef.set(ar.result());
-          } else {
-            deployThrowable.set(ar.cause());
+      } else {
+        JsonObject conf = new JsonObject().putString("methodName", getActualMethodName(method))
+            .putString("handlerAddress", handlerAddress).putString("testId", testId);
+        long start = System.nanoTime();
+        AsyncResult<String> deployResult = deploy(main, conf, classpath, includes);
+        long deployed = System.nanoTime();
+        deployNanos = deployed - start;
+        if (deployResult.failed()) {
+          notifier.fireTestFailure(new Failure(desc, deployResult.cause()));
+        } else {
+          // The test starts running as soon as it's deployed, so that's when the clock starts
+          AsyncResult<Void> testResult = awaitTest(method, completion, timeout);
+          long ran = System.nanoTime();
+          runNanos = ran - deployed;
+          if (testResult.failed()) {
+            notifier.fireTestFailure(new Failure(desc, testResult.cause()));
+          }
+          // Undeploy even if the test timed out so it doesn't carry on running in the background
+          AsyncResult<Void> undeployResult = undeploy(deployResult.result());
+          undeployNanos = System.nanoTime() - ran;
+          if (undeployResult.failed()) {
+            notifier.fireTestFailure(new Failure(desc, undeployResult.cause()));
           }
-          deployLatch.countDown();
         }
-      });
-      waitForLatch(deployLatch);
-      if (deployThrowable.get() != null) {
-        notifier.fireTestFailure(new Failure(desc, deployThrowable.get()));
-        notifier.fireTestFinished(desc);
-        return;
       }
-      waitForLatch(testLatch);
-      eb.unregisterHandler(TESTRUNNER_HANDLER_ADDRESS, handler);
-      final CountDownLatch undeployLatch = new CountDownLatch(1);
-      final AtomicReference<Throwable> undeployThrowable = new AtomicReference<>();
-      mgr.undeploy(deploymentIDRef.get(), new AsyncResultHandler<Void>() {
-        public void handle(AsyncResult<Void> ar) {
-          if (ar.failed()) {
-            undeployThrowable.set(ar.cause());
-          }
-          undeployLatch.countDown();
+      Timings timings = new Timings(deployNanos, runNanos, undeployNanos, completion.eventBusNanos);
+      recordTimings(method, timings);
+      notifier.fireTestFinished(Description.createTestDescription(testClass, testDesc, timings));
+    } catch (InterruptedException e) {
+      // Report the test as failed and stop running any more
+      notifier.fireTestFailure(new Failure(desc, e));
+      notifier.fireTestFinished(desc);
+      Thread.currentThread().interrupt();
+      notifier.pleaseStop();
+    } finally {
+      pending.remove(testId);
+    }
+  }
+
+  /**
+   * The timeout for a test method is taken from, in order of precedence, a {@link TestVerticleInfo#timeout()} on the
+   * method, the timeout of its {@link Test} annotation, a {@link TestVerticleInfo#timeout()} on the class, and the
+   * <code>vertx.test.timeout</code> system property.
+   *
+   * If <code>vertx.test.timeout.adaptive</code> is set, the durations of successful runs of each test are recorded
+   * and tests without a timeout of their own get a timeout derived from their previous durations instead. This is
+   * never more than the timeout of the class.
+   *
+   * @return the number of milliseconds to wait for the test method to complete
+   */
+  protected long getTimeoutMillis(FrameworkMethod method) {
+    TestVerticleInfo methodAnnotation = method.getAnnotation(TestVerticleInfo.class);
+    if (methodAnnotation != null && methodAnnotation.timeout() > 0) {
+      return TimeUnit.SECONDS.toMillis(methodAnnotation.timeout());
+    }
+    Test test = method.getAnnotation(Test.class);
+    if (test != null && test.timeout() > 0) {
+      return test.timeout();
+    }
+    TestVerticleInfo annotation = getAnnotation();
+    long timeout = TimeUnit.SECONDS.toMillis(annotation != null && annotation.timeout() > 0 ? annotation.timeout() :
+        TIMEOUT);
+    if (ADAPTIVE_TIMEOUT) {
+      timeout = TestDurations.instance().timeout(getDurationKey(method), timeout);
+    }
+    return timeout;
+  }
+
+  private String getDurationKey(FrameworkMethod method) {
+    return getTestClass().getName() + "#" + method.getName();
+  }
+
+  private AsyncResult<Void> awaitTest(FrameworkMethod method, Completion<Void> completion, long timeout)
+      throws InterruptedException {
+    long start = System.nanoTime();
+    try {
+      AsyncResult<Void> result = completion.await(timeout);
+      if (ADAPTIVE_TIMEOUT && result.succeeded()) {
+        TestDurations.instance().record(getDurationKey(method),
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+      }
+      return result;
+    } catch (TimeoutException e) {
+      AssertionError error = new AssertionError("Timed out after " + timeout + " ms waiting for test to complete");
+      // Include what the Vert.x threads are up to, it's usually the best clue as to why the test hung
+      // Idle worker threads are just parked waiting for work so leave those out
+      for (Map.Entry<Thread, StackTraceElement[]> entry: Thread.getAllStackTraces().entrySet()) {
+        Thread thread = entry.getKey();
+        Thread.State state = thread.getState();
+        if (thread.getName().startsWith("vert.x-eventloop") || (thread.getName().startsWith("vert.x-") &&
+            state != Thread.State.WAITING && state != Thread.State.TIMED_WAITING)) {
+          Exception stack = new Exception("Stack of thread " + thread.getName() + " (" + thread.getState() + ")");
+          stack.setStackTrace(entry.getValue());
+          error.addSuppressed(stack);
         }
-      });
-      waitForLatch(undeployLatch);
-      if (undeployThrowable.get() != null) {
-        notifier.fireTestFailure(new Failure(desc, undeployThrowable.get()));
-        notifier.fireTestFinished(desc);
+      }
+      error.printStackTrace();
+      return new DefaultFutureResult<Void>(error);
+    }
+  }
+
+  private void recordTimings(FrameworkMethod method, TestTimings t) {
+    JsonObject json = new JsonObject().putString("test", method.getName())
+        .putNumber("deployNanos", t.deployNanos()).putNumber("runNanos", t.runNanos())
+        .putNumber("undeployNanos", t.undeployNanos()).putNumber("eventBusNanos", t.eventBusNanos());
+    synchronized (timings) {
+      timings.addObject(json);
+    }
+    summary.add(method.getName(), t);
+    TestSummary.instance().add(getDurationKey(method), t);
+  }
+
+  /**
+   * Write the timings of the tests of this class to <code>test-timings/&lt;class name&gt;.json</code> in the build
+   * directory, as an array with an object for each test
+   */
+  private void saveTimings() {
+    synchronized (timings) {
+      if (timings.size() == 0) {
         return;
       }
-      if (failure.get() != null) {
-        notifier.fireTestFailure(new Failure(desc, failure.get()));
+      File file = new File(new File(getBuildDir(), "test-timings"), getTestClass().getName() + ".json");
+      file.getParentFile().mkdirs();
+      try {
+        Files.write(file.toPath(), timings.encode().getBytes(StandardCharsets.UTF_8));
+      } catch (IOException e) {
+        log.error("Failed to save test timings to " + file, e);
       }
-      notifier.fireTestFinished(desc);
-    } catch (Exception e) {
-      e.printStackTrace();
     }
   }
 
-  private void waitForLatch(CountDownLatch latch) {
-    while (true) {
+  /**
+   * Get the non jar entries of the classpath of the platform classloader, looked up once for each classloader. When
+   * the classloader isn't a URLClassLoader, as for the application classloader on Java 9 and later, the entries are
+   * read from the <code>java.class.path</code> system property instead.
+   */
+  private static List<URL> getPlatformClassPath(ClassLoader pcl) {
+    /*
+    We need to add entries from the platform classloader to the module classloader that's created for the verticle that
+    we deploy.
+    This is especially important if there are tests which deploy Groovy compiled Verticles that are not in the module
+    under test.
+    In this case the Groovy compiled verticle classes will be on the platform classloader. When the test verticle
+    tries to deploy the Groovy compiled verticle it will be found on the platform classloader not the module classloader
+    and that classloader will then try to load the org.vertx.groovy.platform.Verticle class which it won't find since
+    this is only available in the Groovy lang module.
+    To solve this we must add the non jar classpath entries of the platform classloader to the module classloader of
+    the test verticle so that they are loaded from there and it then also tries to load org.vertx.groovy.platform.Verticle
+    from there which it will now find since the Groovy lang module is a parent (included) by the test verticle module
+    classloader
+     */
+    synchronized (platformClassPaths) {
+      List<URL> urls = platformClassPaths.get(pcl);
+      if (urls == null) {
+        urls = new ArrayList<>();
+        if (pcl instanceof URLClassLoader) {
+          for (URL url: ((URLClassLoader)pcl).getURLs()) {
+            String surl = url.toString();
+            if (!surl.endsWith(".jar") && !surl.endsWith(".zip")) {
+              urls.add(url);
+            }
+          }
+        } else {
+          for (String entry: System.getProperty("java.class.path", "").split(File.pathSeparator)) {
+            if (!entry.isEmpty() && !entry.endsWith(".jar") && !entry.endsWith(".zip")) {
+              try {
+                urls.add(new File(entry).toURI().toURL());
+              } catch (MalformedURLException e) {
+                log.warn("Ignoring classpath entry " + entry, e);
+              }
+            }
+          }
+        }
+        urls = Collections.unmodifiableList(urls);
+        platformClassPaths.put(pcl, urls);
+      }
+      return urls;
+    }
+  }
+
+  /**
+   * Get the deployment shared by all the tests of this runner with the same main and classpath, deploying it the
+   * first time it's asked for. The test verticle registers a handler on the run address and runs each test method
+   * it is sent there. Deployment completes when <code>start()</code> returns, but a test verticle may only start its
+   * tests once something it deploys asynchronously is up, so the deployment isn't used until the verticle has sent a
+   * <code>ready</code> message with its run address to the handler address.
+   *
+   * Shared tests run one at a time in order, so when the tests move on to another deployment the previous one is
+   * undeployed first, rather than leaving it running alongside until the class is done.
+   */
+  private synchronized SharedDeployment getSharedDeployment(String main, URL[] urls, String includes,
+      RunNotifier notifier) throws InterruptedException {
+    String key = main + Arrays.toString(urls);
+    SharedDeployment deployment = sharedDeployments.get(key);
+    if (deployment == null) {
+      undeploySharedDeployments(notifier);
+      deployment = new SharedDeployment(handlerAddress + ".run." + sharedDeployments.size());
+      JsonObject conf = new JsonObject().putString("runAddress", deployment.runAddress)
+          .putString("handlerAddress", handlerAddress);
+      Completion<Void> ready = new Completion<>();
+      starting.put(deployment.runAddress, ready);
       try {
-        if (!latch.await(TIMEOUT, TimeUnit.SECONDS)) {
-          throw new AssertionError("Timed out waiting for test to complete");
+        AsyncResult<String> deployResult = deploy(main, conf, urls, includes);
+        if (deployResult.succeeded()) {
+          deployment.deploymentID = deployResult.result();
+          try {
+            ready.await(TimeUnit.SECONDS.toMillis(TIMEOUT));
+          } catch (TimeoutException e) {
+            deployment.deployThrowable = new AssertionError("Timed out after " + TIMEOUT + " seconds waiting for " +
+                main + " to call startTests()");
+          }
+        } else {
+          deployment.deployThrowable = deployResult.cause();
+        }
+      } finally {
+        starting.remove(deployment.runAddress);
+      }
+      sharedDeployments.put(key, deployment);
+    }
+    return deployment;
+  }
+
+  private synchronized void undeploySharedDeployments(RunNotifier notifier) throws InterruptedException {
+    for (SharedDeployment deployment: sharedDeployments.values()) {
+      if (deployment.deploymentID != null) {
+        AsyncResult<Void> undeployResult = undeploy(deployment.deploymentID);
+        if (undeployResult.failed()) {
+          notifier.fireTestFailure(new Failure(getDescription(), undeployResult.cause()));
         }
-        break;
-      } catch (InterruptedException e) {
-        // Ignore
       }
     }
+    sharedDeployments.clear();
+  }
+
+  private AsyncResult<String> deploy(String main, JsonObject conf, URL[] urls, String includes)
+      throws InterruptedException {
+    Completion<String> completion = new Completion<>();
+    mgr.deployVerticle(main, conf, urls, 1, includes, completion);
+    try {
+      return completion.await(TimeUnit.SECONDS.toMillis(TIMEOUT));
+    } catch (TimeoutException e) {
+      return new DefaultFutureResult<String>(new AssertionError("Timed out after " + TIMEOUT + " seconds deploying " +
+          main));
+    }
+  }
+
+  private AsyncResult<Void> undeploy(String deploymentID) throws InterruptedException {
+    Completion<Void> completion = new Completion<>();
+    mgr.undeploy(deploymentID, completion);
+    try {
+      return completion.await(TimeUnit.SECONDS.toMillis(TIMEOUT));
+    } catch (TimeoutException e) {
+      return new DefaultFutureResult<Void>(new AssertionError("Timed out after " + TIMEOUT + " seconds undeploying"));
+    }
   }
 
+  /**
+   * A Description can only carry annotations, so the timings are attached as a TestTimings instance of our own. It
+   * follows the contract of {@link Annotation} for equals, hashCode and toString like the instances the JVM creates.
+   */
+  private static class Timings implements TestTimings {
+    final long deployNanos;
+    final long runNanos;
+    final long undeployNanos;
+    final long eventBusNanos;
+
+    Timings(long deployNanos, long runNanos, long undeployNanos, long eventBusNanos) {
+      this.deployNanos = deployNanos;
+      this.runNanos = runNanos;
+      this.undeployNanos = undeployNanos;
+      this.eventBusNanos = eventBusNanos;
+    }
+
+    public long deployNanos() {
+      return deployNanos;
+    }
+
+    public long runNanos() {
+      return runNanos;
+    }
+
+    public long undeployNanos() {
+      return undeployNanos;
+    }
 
+    public long eventBusNanos() {
+      return eventBusNanos;
+    }
+
+    public Class<? extends Annotation> annotationType() {
+      return TestTimings.class;
+    }
 
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof TestTimings)) {
+        return false;
+      }
+      TestTimings other = (TestTimings)o;
+      return deployNanos == other.deployNanos() && runNanos == other.runNanos() &&
+          undeployNanos == other.undeployNanos() && eventBusNanos == other.eventBusNanos();
+    }
+
+    @Override
+    public int hashCode() {
+      // The sum over the members of 127 times the hash code of the member's name xor the hash code of its value
+      return memberHashCode("deployNanos", deployNanos) + memberHashCode("runNanos", runNanos) +
+          memberHashCode("undeployNanos", undeployNanos) + memberHashCode("eventBusNanos", eventBusNanos);
+    }
+
+    private static int memberHashCode(String name, long value) {
+      return (127 * name.hashCode()) ^ (int)(value ^ (value >>> 32));
+    }
+
+    @Override
+    public String toString() {
+      return "@" + TestTimings.class.getName() + "(deployNanos=" + deployNanos + ", runNanos=" + runNanos +
+          ", undeployNanos=" + undeployNanos + ", eventBusNanos=" + eventBusNanos + ")";
+    }
+  }
+
+  private static class SharedDeployment {
+    final String runAddress;
+    String deploymentID;
+    Throwable deployThrowable;
+
+    SharedDeployment(String runAddress) {
+      this.runAddress = runAddress;
+    }
+  }
+
+  /**
+   * The outcome of something running on the Vert.x side that the runner waits for. Only the first result counts.
+   */
+  private static class Completion<T> implements AsyncResultHandler<T> {
+
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private final AtomicReference<AsyncResult<T>> result = new AtomicReference<>();
+    // How long the result took to arrive over the event bus, if the sender said when it sent it
+    volatile long eventBusNanos;
+
+    @Override
+    public void handle(AsyncResult<T> ar) {
+      if (result.compareAndSet(null, ar)) {
+        latch.countDown();
+      }
+    }
+
+    AsyncResult<T> await(long timeout) throws InterruptedException, TimeoutException {
+      if (!latch.await(timeout, TimeUnit.MILLISECONDS)) {
+        throw new TimeoutException();
+      }
+      return result.get();
+    }
+  }
+
+  /**
+   * Runs the children of the class on a fixed size pool so several tests can be deployed at once. Results are
+   * reported to the RunNotifier from the pool threads as each test completes.
+   */
+  private static class ConcurrentScheduler implements RunnerScheduler {
+
+    private final ExecutorService executor;
+    private final AtomicReference<Throwable> error = new AtomicReference<>();
+
+    ConcurrentScheduler(int concurrency) {
+      executor = Executors.newFixedThreadPool(concurrency, new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "vertx-test-runner-" + count.incrementAndGet());
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    }
+
+    @Override
+    public void schedule(final Runnable childStatement) {
+      executor.execute(new Runnable() {
+        public void run() {
+          try {
+            childStatement.run();
+          } catch (Throwable t) {
+            error.compareAndSet(null, t);
+          }
+        }
+      });
+    }
+
+    @Override
+    public void finished() {
+      executor.shutdown();
+      try {
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        executor.shutdownNow();
+        Thread.currentThread().interrupt();
+      }
+      // Rethrow anything that escaped a child so it surfaces just as it would when running sequentially
+      Throwable t = error.get();
+      if (t instanceof RuntimeException) {
+        throw (RuntimeException)t;
+      } else if (t instanceof Error) {
+        throw (Error)t;
+      }
+    }
+  }
 }
@@ -0,0 +1,165 @@
+package org.vertx.testtools;
+/*
+ * Copyright 2013 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.AsyncResultHandler;
+import org.vertx.java.core.logging.Logger;
+import org.vertx.java.core.logging.impl.LoggerFactory;
+import org.vertx.java.platform.PlatformLocator;
+import org.vertx.java.platform.PlatformManager;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A JVM wide pool of PlatformManager instances shared by all the test classes run in the JVM.
+ *
+ * Creating a PlatformManager starts a new Vert.x instance with its own event loops, worker pool and event bus, so
+ * rather than creating one for each test class the runners borrow one from here and release it when the class is
+ * done. Managers are keyed by the configuration they were created with (the modules directory and the cluster
+ * settings), and are kept running when no longer borrowed so the next test class can reuse them.
+ *
+ * A manager is only lent to one borrower at a time, so test classes run in parallel each get their own just as they
+ * would without the pool, and results sent to the shared handler address can't reach another class. Any deployments
+ * left behind are undeployed before the manager is lent again; if that fails or takes longer than
+ * <code>vertx.test.timeout</code> the manager is stopped instead. Shared data is not cleared, so maps and sets in
+ * <code>vertx.sharedData()</code> carry over from one test class to the next. All the managers are stopped when the
+ * JVM exits.
+ *
+ * Clustering is enabled by setting the <code>vertx.test.clusterHost</code> system property, optionally together
+ * with <code>vertx.test.clusterPort</code>.
+ */
+public final class PlatformManagerPool {
+
+  private static final Logger log = LoggerFactory.getLogger(PlatformManagerPool.class);
+
+  private static final int DEFAULT_CLUSTER_PORT = 25500;
+
+  // The managers nobody is using, keyed by configuration
+  private static final Map<String, Deque<PlatformManager>> idle = new HashMap<>();
+  // The configuration of each manager that's lent out
+  private static final Map<PlatformManager, String> borrowed = new HashMap<>();
+
+  static {
+    Runtime.getRuntime().addShutdownHook(new Thread("vertx-test-platform-shutdown") {
+      public void run() {
+        stopAll();
+      }
+    });
+  }
+
+  /**
+   * Borrow a PlatformManager matching the current system properties, creating one if none is free.
+   * @return the PlatformManager
+   */
+  public static synchronized PlatformManager acquire() {
+    String clusterHost = System.getProperty("vertx.test.clusterHost");
+    int clusterPort = Integer.getInteger("vertx.test.clusterPort", DEFAULT_CLUSTER_PORT);
+    String key = System.getProperty("vertx.mods") + "|" + (clusterHost == null ? "" : clusterHost + ":" + clusterPort);
+    Deque<PlatformManager> free = idle.get(key);
+    PlatformManager mgr = free == null ? null : free.poll();
+    if (mgr == null) {
+      mgr = clusterHost == null ? PlatformLocator.factory.createPlatformManager() :
+          PlatformLocator.factory.createPlatformManager(clusterPort, clusterHost);
+    }
+    borrowed.put(mgr, key);
+    return mgr;
+  }
+
+  /**
+   * Give back a PlatformManager obtained from {@link #acquire()}. Any deployments left on it are undeployed before
+   * this returns, and it stays running so it can be reused.
+   * @param mgr the PlatformManager
+   */
+  public static void release(PlatformManager mgr) {
+    String key;
+    synchronized (PlatformManagerPool.class) {
+      key = borrowed.remove(mgr);
+    }
+    if (key == null) {
+      throw new IllegalArgumentException("PlatformManager was not obtained from the pool");
+    }
+    // Wait for the leftovers to stop, otherwise the next class could find their ports and handlers still in use
+    final CountDownLatch latch = new CountDownLatch(1);
+    final AtomicReference<AsyncResult<Void>> result = new AtomicReference<>();
+    mgr.undeployAll(new AsyncResultHandler<Void>() {
+      public void handle(AsyncResult<Void> ar) {
+        result.set(ar);
+        latch.countDown();
+      }
+    });
+    boolean clean = false;
+    try {
+      if (!latch.await(JavaClassRunner.TIMEOUT, TimeUnit.SECONDS)) {
+        log.error("Timed out after " + JavaClassRunner.TIMEOUT + " seconds undeploying leftover deployments");
+      } else if (result.get().failed()) {
+        log.error("Failed to undeploy leftover deployments", result.get().cause());
+      } else {
+        clean = true;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (clean) {
+      synchronized (PlatformManagerPool.class) {
+        Deque<PlatformManager> free = idle.get(key);
+        if (free == null) {
+          free = new ArrayDeque<>();
+          idle.put(key, free);
+        }
+        free.push(mgr);
+      }
+    } else {
+      // Don't lend out a manager that may still be running the last class's verticles
+      stop(mgr);
+    }
+  }
+
+  private static void stopAll() {
+    List<PlatformManager> mgrs = new ArrayList<>();
+    synchronized (PlatformManagerPool.class) {
+      for (Deque<PlatformManager> free: idle.values()) {
+        mgrs.addAll(free);
+      }
+      mgrs.addAll(borrowed.keySet());
+      idle.clear();
+      borrowed.clear();
+    }
+    for (PlatformManager mgr: mgrs) {
+      stop(mgr);
+    }
+  }
+
+  private static void stop(PlatformManager mgr) {
+    try {
+      mgr.stop();
+    } catch (Exception e) {
+      log.error("Failed to stop platform manager", e);
+    }
+  }
+
+  private PlatformManagerPool() {
+  }
+}
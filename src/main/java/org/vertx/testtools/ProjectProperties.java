@@ -0,0 +1,176 @@
+package org.vertx.testtools;
+/*
+ * Copyright 2013 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+import org.vertx.java.core.logging.Logger;
+import org.vertx.java.core.logging.impl.LoggerFactory;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.*;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * The properties of the module under test, read from <code>vertx.properties</code>, <code>gradle.properties</code>
+ * or <code>pom.xml</code> in the working directory, whichever is found first. They are only read once for the JVM,
+ * and set as system properties at the same time so tests can run directly in an IDE without custom configurations.
+ *
+ * The group id and version of a Maven project are inherited from its parent when it doesn't set them itself.
+ */
+public final class ProjectProperties {
+
+  private static final Logger log = LoggerFactory.getLogger(ProjectProperties.class);
+
+  private static ProjectProperties instance;
+
+  private final Map<String, String> properties;
+  private final String moduleName;
+  private final String modsDir;
+
+  /**
+   * @return the properties of the project in the working directory, read and set as system properties the first
+   * time this is called
+   */
+  public static synchronized ProjectProperties instance() {
+    if (instance == null) {
+      instance = read(new File("."));
+      instance.apply();
+    }
+    return instance;
+  }
+
+  static ProjectProperties read(File dir) {
+    File propsFile = new File(dir, "vertx.properties");
+    if (propsFile.exists()) {
+      return fromProperties(propsFile, null);
+    }
+    propsFile = new File(dir, "gradle.properties");
+    if (propsFile.exists()) {
+      return fromProperties(propsFile, "build/mods");
+    }
+    File pom = new File(dir, "pom.xml");
+    if (pom.exists()) {
+      return fromPom(pom, "target/mods");
+    }
+    return new ProjectProperties(Collections.<String, String>emptyMap(), null, null);
+  }
+
+  private ProjectProperties(Map<String, String> properties, String moduleName, String modsDir) {
+    this.properties = Collections.unmodifiableMap(properties);
+    this.moduleName = moduleName;
+    this.modsDir = modsDir;
+  }
+
+  /**
+   * @return the properties of the project with <code>vertx.</code> prepended to their names, empty for Maven projects
+   */
+  public Map<String, String> getProperties() {
+    return properties;
+  }
+
+  /**
+   * @return the name of the module under test as owner~name~version, or null if the project doesn't say
+   */
+  public String getModuleName() {
+    return moduleName;
+  }
+
+  /**
+   * @return the directory the build installs modules to, or null if it isn't known
+   */
+  public String getModsDir() {
+    return modsDir;
+  }
+
+  private void apply() {
+    for (Map.Entry<String, String> entry: properties.entrySet()) {
+      System.setProperty(entry.getKey(), entry.getValue());
+    }
+    if (moduleName != null) {
+      System.setProperty("vertx.modulename", moduleName);
+    }
+    if (System.getProperty("vertx.mods") == null && modsDir != null) {
+      System.setProperty("vertx.mods", modsDir);
+    }
+    System.setProperty("vertx.idedirs", "true");
+  }
+
+  private static ProjectProperties fromProperties(File propsFile, String modsDir) {
+    Map<String, String> map = new HashMap<>();
+    String moduleName = null;
+    Properties props = new Properties();
+    try (InputStream is = new BufferedInputStream(new FileInputStream(propsFile))) {
+      props.load(is);
+      for (String propName: props.stringPropertyNames()) {
+        map.put("vertx." + propName, props.getProperty(propName));
+      }
+      String modOwner = props.getProperty("modowner");
+      if (modOwner != null) {
+        moduleName = modOwner + "~" + props.getProperty("modname") + "~" + props.getProperty("version");
+      }
+    } catch (IOException e) {
+      log.error("Failed to load props file", e);
+    }
+    return new ProjectProperties(map, moduleName, modsDir);
+  }
+
+  private static ProjectProperties fromPom(File pom, String modsDir) {
+    // Only the coordinates of the project itself and of its parent matter, the same tags elsewhere are ignored
+    Map<String, String> project = new HashMap<>();
+    Map<String, String> parent = new HashMap<>();
+    try (InputStream is = new BufferedInputStream(new FileInputStream(pom))) {
+      XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(is);
+      try {
+        int depth = 0;
+        boolean inParent = false;
+        while (reader.hasNext()) {
+          int event = reader.next();
+          if (event == XMLStreamConstants.START_ELEMENT) {
+            depth++;
+            String name = reader.getLocalName();
+            if (depth == 2 && name.equals("parent")) {
+              inParent = true;
+            } else if ((depth == 2 || (depth == 3 && inParent)) &&
+                (name.equals("groupId") || name.equals("artifactId") || name.equals("version"))) {
+              // Leaves the reader on the end element
+              (depth == 2 ? project : parent).put(name, reader.getElementText().trim());
+              depth--;
+            }
+          } else if (event == XMLStreamConstants.END_ELEMENT) {
+            depth--;
+            if (depth == 1) {
+              inParent = false;
+            }
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (IOException | XMLStreamException e) {
+      log.error("Failed to read " + pom, e);
+    }
+    String groupId = project.containsKey("groupId") ? project.get("groupId") : parent.get("groupId");
+    String version = project.containsKey("version") ? project.get("version") : parent.get("version");
+    return new ProjectProperties(Collections.<String, String>emptyMap(),
+        groupId + "~" + project.get("artifactId") + "~" + version, modsDir);
+  }
+}
@@ -0,0 +1,102 @@
+package org.vertx.testtools;
+/*
+ * Copyright 2013 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+import org.vertx.java.core.logging.Logger;
+import org.vertx.java.core.logging.impl.LoggerFactory;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Reads and writes the properties files the runners keep in the build directory between runs. These may be shared
+ * by several JVMs (e.g. Gradle test forks) so they are always replaced atomically, and updated while holding a lock
+ * on a <code>.lock</code> file next to them so that no JVM overwrites what another has just written.
+ */
+final class PropertiesFile {
+
+  private static final Logger log = LoggerFactory.getLogger(PropertiesFile.class);
+
+  static Map<String, String> load(File file) {
+    Map<String, String> map = new HashMap<>();
+    if (file.exists()) {
+      Properties props = new Properties();
+      try (InputStream is = new BufferedInputStream(new FileInputStream(file))) {
+        props.load(is);
+        for (String name: props.stringPropertyNames()) {
+          map.put(name, props.getProperty(name));
+        }
+      } catch (IOException e) {
+        log.error("Failed to load " + file, e);
+      }
+    }
+    return map;
+  }
+
+  static void store(File file, Map<String, String> map, String comment) {
+    Properties props = new Properties();
+    props.putAll(map);
+    try {
+      File dir = file.getAbsoluteFile().getParentFile();
+      dir.mkdirs();
+      // Write to a temporary file and move it into place so other JVMs never see it half written
+      File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+      try (OutputStream os = new BufferedOutputStream(new FileOutputStream(tmp))) {
+        props.store(os, comment);
+      }
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      log.error("Failed to save " + file, e);
+    }
+  }
+
+  /**
+   * Changes the current contents of a file
+   */
+  interface Update {
+    void apply(Map<String, String> current);
+  }
+
+  /**
+   * Read the file, apply the update and write it back, without any other JVM or thread updating it in between
+   */
+  static void update(File file, Update update, String comment) {
+    File lockFile = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".lock");
+    lockFile.getParentFile().mkdirs();
+    // File locks are held for the whole JVM, so threads of the same JVM have to take turns first
+    synchronized (PropertiesFile.class) {
+      try (FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE); FileLock lock = channel.lock()) {
+        Map<String, String> current = load(file);
+        update.apply(current);
+        store(file, current, comment);
+      } catch (IOException e) {
+        log.error("Failed to update " + file, e);
+      }
+    }
+  }
+
+  private PropertiesFile() {
+  }
+}
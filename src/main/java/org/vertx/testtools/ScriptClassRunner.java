@@ -20,14 +20,29 @@ package org.vertx.testtools;
 import org.junit.runners.model.FrameworkMethod;
 import org.junit.runners.model.InitializationError;
 
-import java.io.*;
+import java.io.File;
+import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
-import java.util.regex.Matcher;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 public class ScriptClassRunner extends JavaClassRunner {
@@ -56,7 +71,7 @@ public class ScriptClassRunner extends JavaClassRunner {
       throw new IllegalArgumentException("Scripts directory does not exist: " + scriptsDir);
     }
 
-    FilenameFilter filter = new RegExFileNameFilter(ann.filenameFilter());
+    Pattern filter = Pattern.compile(ann.filenameFilter());
 
     List<File> testScripts = findTestFiles(scriptsDir, filter);
 
@@ -64,65 +79,115 @@ public class ScriptClassRunner extends JavaClassRunner {
       throw new IllegalStateException("There are no scripts in directory " + scriptsDir + " or child directories, matching filter " + filter);
     }
 
-    Pattern funcPattern = Pattern.compile(funcRegex);
-    for (File scriptFile: testScripts) {
-      Path scriptFilePath = scriptFile.toPath();
-      Path parent = scriptFilePath.getParent();
-      Path filename = scriptFilePath.getFileName();
-      try (InputStream is = new BufferedInputStream(new FileInputStream(scriptFile))) {
-        StringBuilder sb = new StringBuilder();
-        BufferedReader br = new BufferedReader(new InputStreamReader(is));
-        for (String line = br.readLine(); line != null; line = br.readLine()) {
-          sb.append(line).append("\n");
+    final Pattern funcPattern = Pattern.compile(funcRegex);
+    final ScriptIndex index = ScriptIndex.instance();
+    List<Future<List<String>>> functions = new ArrayList<>();
+    ExecutorService executor = Executors.newFixedThreadPool(
+        Math.min(testScripts.size(), Runtime.getRuntime().availableProcessors()), new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "vertx-test-scanner-" + count.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      }
+    });
+    try {
+      for (final File scriptFile: testScripts) {
+        functions.add(executor.submit(new Callable<List<String>>() {
+          public List<String> call() throws IOException {
+            return index.functions(scriptFile, funcPattern);
+          }
+        }));
+      }
+      // Collect in the order the scripts were found so the tests are always listed in the same order
+      Map<Path, URL> classPaths = new HashMap<>();
+      for (int i = 0; i < testScripts.size(); i++) {
+        Path scriptFilePath = testScripts.get(i).toPath();
+        Path parent = scriptFilePath.getParent();
+        String filename = scriptFilePath.getFileName().toString();
+        // Scripts in the same directory share the classpath entry
+        if (!classPaths.containsKey(parent)) {
+          classPaths.put(parent, toClassPath(parent));
         }
-        br.close();
-        Matcher m = funcPattern.matcher(sb.toString());
-        while (m.find()) {
-          String methodName = m.group(1);
-          FrameworkMethod meth = new DummyFrameWorkMethod(parent + "|" + filename + "|" + methodName);
-          meths.add(meth);
+        URL classPath = classPaths.get(parent);
+        try {
+          for (String function: functions.get(i).get()) {
+            meths.add(new ScriptTestMethod(parent, classPath, filename, function));
+          }
+        } catch (ExecutionException e) {
+          throw new IllegalStateException("Failed to read script " + testScripts.get(i), e.getCause());
         }
-      } catch (IOException e) {
-        throw new IllegalStateException("Failed to read script " + scriptFile);
       }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while scanning scripts in " + scriptsDir);
+    } finally {
+      executor.shutdownNow();
     }
+    index.save();
     if (meths.isEmpty()) {
       throw new IllegalStateException("There are no test methods in the tests sctripts");
     }
     return meths;
   }
 
-  private List<File> findTestFiles(File dir, FilenameFilter filter) {
-    List<File> list = new ArrayList<>();
-    File[] files = dir.listFiles(filter);
-    for (File file: files) {
-      if (file.isDirectory()) {
-        list.addAll(findTestFiles(file, filter));
-      } else {
-        list.add(file);
-      }
+  private List<File> findTestFiles(File dir, final Pattern filter) {
+    final List<File> list = new ArrayList<>();
+    try {
+      Files.walkFileTree(dir.toPath(), EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+          new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+          if (filter.matcher(file.getFileName().toString()).matches()) {
+            list.add(file.toFile());
+          }
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to list scripts in " + dir, e);
     }
     return list;
   }
 
   @Override
-  protected URL getClassPath(String methodName) {
-    try {
-      return new File(methodName.split("\\|")[0]).toURI().toURL();
-    } catch (MalformedURLException e) {
-      e.printStackTrace();
-      return null;
-    }
+  protected int getConcurrency() {
+    // Script test helpers initialise VertxAssert without a handler address so they all report to the shared one
+    return 1;
+  }
+
+  /**
+   * Scripts are always deployed once per test function. Deploying a script once for all its functions needs the
+   * script test helper of its language module to register on the run address and tell the runner it is ready, which
+   * none of them do yet.
+   */
+  @Override
+  protected boolean isDeployPerClass() {
+    return false;
+  }
+
+  @Override
+  protected URL getClassPath(FrameworkMethod method) {
+    return ((ScriptTestMethod)method).classPath;
   }
 
   @Override
-  protected String getMain(String methodName) {
-    return methodName.split("\\|")[1];
+  protected String getMain(FrameworkMethod method) {
+    return ((ScriptTestMethod)method).main;
   }
 
   @Override
-  public String getActualMethodName(String methodName) {
-    return methodName.split("\\|")[2];
+  public String getActualMethodName(FrameworkMethod method) {
+    return ((ScriptTestMethod)method).function;
+  }
+
+  private static URL toClassPath(Path dir) {
+    try {
+      return dir.toUri().toURL();
+    } catch (MalformedURLException e) {
+      e.printStackTrace();
+      return null;
+    }
   }
 
   @Override
@@ -130,13 +195,23 @@ public class ScriptClassRunner extends JavaClassRunner {
     return getTestMethods();
   }
 
-  private class DummyFrameWorkMethod extends FrameworkMethod {
+  /**
+   * A test function in a script. The name is the script directory, script and function separated by | as it has
+   * always been reported, but the parts are kept separately so they never have to be parsed back out of it.
+   */
+  private static class ScriptTestMethod extends FrameworkMethod {
 
-    String methodName;
+    final String methodName;
+    final URL classPath;
+    final String main;
+    final String function;
 
-    DummyFrameWorkMethod(String methodName) {
+    ScriptTestMethod(Path dir, URL classPath, String main, String function) {
       super(null);
-      this.methodName = methodName;
+      this.methodName = dir + "|" + main + "|" + function;
+      this.classPath = classPath;
+      this.main = main;
+      this.function = function;
     }
 
     @Override
@@ -176,23 +251,4 @@ public class ScriptClassRunner extends JavaClassRunner {
     }
 
   }
-
-  private class RegExFileNameFilter implements FilenameFilter {
-
-    final Pattern pattern;
-
-    RegExFileNameFilter(String regex) {
-      pattern = Pattern.compile(regex);
-    }
-
-    @Override
-    public boolean accept(File dir, String name) {
-      File f = new File(dir, name);
-      return f.isDirectory() || pattern.matcher(name).matches();
-    }
-
-    public String toString() {
-      return pattern.toString();
-    }
-  }
 }
@@ -0,0 +1,140 @@
+package org.vertx.testtools;
+/*
+ * Copyright 2013 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the test functions found in each test script in a local file so that scripts which haven't changed since the
+ * last run don't have to be read and scanned again.
+ *
+ * The file is <code>vertx-script-index.properties</code> in the build directory unless set with the
+ * <code>vertx.test.scriptindex</code> system property. Each entry is keyed by the path of the script and the regex
+ * used to find the functions, and is only used while the size and last modified time of the script are unchanged.
+ */
+final class ScriptIndex {
+
+  private static ScriptIndex instance;
+
+  private final File file;
+  private final Map<String, String> entries;
+  private final Map<String, String> updated = new HashMap<>();
+
+  static synchronized ScriptIndex instance() {
+    if (instance == null) {
+      String fileName = System.getProperty("vertx.test.scriptindex");
+      File file = fileName != null ? new File(fileName) :
+          new File(JavaClassRunner.getBuildDir(), "vertx-script-index.properties");
+      instance = new ScriptIndex(file);
+    }
+    return instance;
+  }
+
+  ScriptIndex(File file) {
+    this.file = file;
+    this.entries = PropertiesFile.load(file);
+  }
+
+  /**
+   * Get the names of the test functions in a script, reading the script only if it has changed since it was indexed.
+   * Several scripts can be scanned at once from different threads.
+   * @param script the script
+   * @param funcPattern the pattern whose first group is the name of a test function
+   * @return the function names in the order they appear in the script
+   */
+  List<String> functions(File script, Pattern funcPattern) throws IOException {
+    String key = script.getAbsolutePath() + "|" + funcPattern.pattern();
+    String stamp = script.length() + "," + script.lastModified();
+    String value;
+    synchronized (this) {
+      value = entries.get(key);
+    }
+    if (value != null && value.startsWith(stamp + "|")) {
+      return parse(value.substring(stamp.length() + 1));
+    }
+    List<String> functions = scan(script, funcPattern);
+    value = stamp + "|" + format(functions);
+    synchronized (this) {
+      entries.put(key, value);
+      updated.put(key, value);
+    }
+    return functions;
+  }
+
+  /**
+   * Write the entries indexed by this JVM to the file. The file is read again under a lock first so that entries
+   * written by other JVMs since it was loaded are kept.
+   */
+  synchronized void save() {
+    if (updated.isEmpty()) {
+      return;
+    }
+    PropertiesFile.update(file, new PropertiesFile.Update() {
+      public void apply(Map<String, String> current) {
+        current.putAll(updated);
+      }
+    }, "Test functions found in each test script");
+    updated.clear();
+  }
+
+  private static List<String> scan(File script, Pattern funcPattern) throws IOException {
+    // Scripts are small so they're read and decoded whole, a function regex could otherwise span any two chunks
+    CharBuffer chars = Charset.defaultCharset().newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE)
+        .decode(ByteBuffer.wrap(Files.readAllBytes(script.toPath())));
+    List<String> functions = new ArrayList<>();
+    Matcher m = funcPattern.matcher(chars);
+    while (m.find()) {
+      functions.add(m.group(1));
+    }
+    return functions;
+  }
+
+  private static List<String> parse(String value) {
+    List<String> functions = new ArrayList<>();
+    for (String function: value.split(",")) {
+      if (!function.isEmpty()) {
+        functions.add(function);
+      }
+    }
+    return functions;
+  }
+
+  private static String format(List<String> functions) {
+    StringBuilder sb = new StringBuilder();
+    for (String function: functions) {
+      if (sb.length() > 0) {
+        sb.append(',');
+      }
+      sb.append(function);
+    }
+    return sb.toString();
+  }
+}
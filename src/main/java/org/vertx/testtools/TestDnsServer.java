@@ -17,310 +17,453 @@ package org.vertx.testtools;
 
 
 import org.apache.directory.server.dns.DnsServer;
-import org.apache.directory.server.dns.io.encoder.DnsMessageEncoder;
-import org.apache.directory.server.dns.io.encoder.ResourceRecordEncoder;
+import org.apache.directory.server.dns.io.decoder.DnsMessageDecoder;
+import org.apache.directory.server.dns.io.encoder.*;
 import org.apache.directory.server.dns.messages.*;
 import org.apache.directory.server.dns.protocol.DnsProtocolHandler;
-import org.apache.directory.server.dns.protocol.DnsUdpDecoder;
-import org.apache.directory.server.dns.protocol.DnsUdpEncoder;
 import org.apache.directory.server.dns.store.DnsAttribute;
 import org.apache.directory.server.dns.store.RecordStore;
+import org.apache.directory.server.protocol.shared.transport.TcpTransport;
 import org.apache.directory.server.protocol.shared.transport.UdpTransport;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.codec.*;
 import org.apache.mina.transport.socket.DatagramAcceptor;
 import org.apache.mina.transport.socket.DatagramSessionConfig;
+import org.apache.mina.transport.socket.SocketAcceptor;
 
 import java.io.IOException;
+import java.net.BindException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 
 /**
+ * A DNS server on 127.0.0.1 that answers queries from a {@link TestDnsZone}. The factory methods for a single record
+ * answer every name with it, under the name that was asked for.
+ *
+ * By default it listens on {@link #PORT}. Use {@link #port(int)} with 0 before starting it to listen on any free
+ * port instead, then {@link #getPort()} to find out which, so several servers can run at once in one JVM or in
+ * parallel test forks.
+ *
+ * The records for each question are only looked up once, and the encoded response to each question is kept and sent
+ * again with just its transaction id changed, so the server answers repeated queries cheaply. Up to
+ * {@link #CACHE_SIZE} questions and responses are kept, the least recently used are dropped past that.
+ *
+ * The server answers over TCP on the same port as UDP. A UDP response larger than 512 bytes, or than the payload size
+ * the client advertised with an EDNS OPT record, only contains the questions and has the truncated flag set, so that
+ * clients retry over TCP as they would with a real server.
+ *
  * @author <a href="mailto:nmaurer@redhat.com">Norman Maurer</a>
  */
 public final class TestDnsServer extends DnsServer {
 
     public static final int PORT = 53530;
 
+    /**
+     * The largest UDP response sent to clients which don't use EDNS
+     */
+    public static final int UDP_PAYLOAD_SIZE = 512;
+
+    /**
+     * The largest UDP response sent to clients which use EDNS, whatever payload size they advertise
+     */
+    public static final int EDNS_PAYLOAD_SIZE = 4096;
+
+    /**
+     * The number of looked up questions and of encoded responses kept
+     */
+    public static final int CACHE_SIZE = 1024;
+
+    // How many free UDP ports to try when asked for any free port, in case the same TCP port is taken
+    private static final int BIND_ATTEMPTS = 10;
+    private static final short OPT_TYPE = 41;
+    // The payload size advertised in the EDNS OPT record of each query, keyed by transaction id
+    private static final String EDNS_PAYLOAD_SIZES = TestDnsServer.class.getName() + ".ednsPayloadSizes";
+
     private final RecordStore store;
+    private int port = PORT;
+    // The encoded responses to each question, sent again with just the transaction id changed
+    private final Map<String, EncodedResponse> responses = lruCache();
 
     private TestDnsServer(RecordStore store) {
-        this.store = store;
+        this.store = new CachingRecordStore(store);
     }
 
-    public static TestDnsServer testResolveA(final String ipAddress) {
-        return new TestDnsServer(new RecordStore() {
-            @Override
-            public Set<ResourceRecord> getRecords(QuestionRecord questionRecord) throws org.apache.directory.server.dns.DnsException {
-                Set<ResourceRecord> set = new HashSet<>();
-
-                ResourceRecordModifier rm = new ResourceRecordModifier();
-                rm.setDnsClass(RecordClass.IN);
-                rm.setDnsName("dns.vertx.io");
-                rm.setDnsTtl(100);
-                rm.setDnsType(RecordType.A);
-                rm.put(DnsAttribute.IP_ADDRESS, ipAddress);
-                set.add(rm.getEntry());
-                return set;
-            }
-        });
+    public static TestDnsServer testResolveA(String ipAddress) {
+        return testZone(TestDnsZone.builder().a("*", ipAddress).build());
     }
 
-    public static TestDnsServer testResolveAAAA(final String ipAddress) {
-        return new TestDnsServer(new RecordStore() {
-            @Override
-            public Set<ResourceRecord> getRecords(QuestionRecord questionRecord) throws org.apache.directory.server.dns.DnsException {
-                Set<ResourceRecord> set = new HashSet<>();
-
-                ResourceRecordModifier rm = new ResourceRecordModifier();
-                rm.setDnsClass(RecordClass.IN);
-                rm.setDnsName("dns.vertx.io");
-                rm.setDnsTtl(100);
-                rm.setDnsType(RecordType.AAAA);
-                rm.put(DnsAttribute.IP_ADDRESS, ipAddress);
-
-                set.add(rm.getEntry());
-                return set;
-            }
-        });
+    public static TestDnsServer testResolveAAAA(String ipAddress) {
+        return testZone(TestDnsZone.builder().aaaa("*", ipAddress).build());
     }
 
-    public static TestDnsServer testResolveMX(final int prio, final String mxRecord) {
-        return new TestDnsServer(new RecordStore() {
-            @Override
-            public Set<ResourceRecord> getRecords(QuestionRecord questionRecord) throws org.apache.directory.server.dns.DnsException {
-                Set<ResourceRecord> set = new HashSet<>();
-
-                ResourceRecordModifier rm = new ResourceRecordModifier();
-                rm.setDnsClass(RecordClass.IN);
-                rm.setDnsName("dns.vertx.io");
-                rm.setDnsTtl(100);
-                rm.setDnsType(RecordType.MX);
-                rm.put(DnsAttribute.MX_PREFERENCE, String.valueOf(prio));
-                rm.put(DnsAttribute.DOMAIN_NAME, mxRecord);
-                set.add(rm.getEntry());
-                return set;
-            }
-        });
+    public static TestDnsServer testResolveMX(int prio, String mxRecord) {
+        return testZone(TestDnsZone.builder().mx("*", prio, mxRecord).build());
     }
 
-    public static TestDnsServer testResolveTXT(final String txt) {
-        return new TestDnsServer(new RecordStore() {
-            @Override
-            public Set<ResourceRecord> getRecords(QuestionRecord questionRecord) throws org.apache.directory.server.dns.DnsException {
-                Set<ResourceRecord> set = new HashSet<>();
-
-                ResourceRecordModifier rm = new ResourceRecordModifier();
-                rm.setDnsClass(RecordClass.IN);
-                rm.setDnsName("dns.vertx.io");
-                rm.setDnsTtl(100);
-                rm.setDnsType(RecordType.TXT);
-                rm.put(DnsAttribute.CHARACTER_STRING, txt);
-                set.add(rm.getEntry());
-                return set;
-            }
-        });
+    public static TestDnsServer testResolveTXT(String txt) {
+        return testZone(TestDnsZone.builder().txt("*", txt).build());
     }
 
-    public static TestDnsServer testResolveNS(final String ns) {
-        return new TestDnsServer(new RecordStore() {
-            @Override
-            public Set<ResourceRecord> getRecords(QuestionRecord questionRecord) throws org.apache.directory.server.dns.DnsException {
-                Set<ResourceRecord> set = new HashSet<>();
-
-                ResourceRecordModifier rm = new ResourceRecordModifier();
-                rm.setDnsClass(RecordClass.IN);
-                rm.setDnsName("dns.vertx.io");
-                rm.setDnsTtl(100);
-                rm.setDnsType(RecordType.NS);
-                rm.put(DnsAttribute.DOMAIN_NAME, ns);
-                set.add(rm.getEntry());
-                return set;
-            }
-        });
+    public static TestDnsServer testResolveNS(String ns) {
+        return testZone(TestDnsZone.builder().ns("*", ns).build());
     }
 
-    public static TestDnsServer testResolveCNAME(final String cname) {
-        return new TestDnsServer(new RecordStore() {
-            @Override
-            public Set<ResourceRecord> getRecords(QuestionRecord questionRecord) throws org.apache.directory.server.dns.DnsException {
-                Set<ResourceRecord> set = new HashSet<>();
-
-                ResourceRecordModifier rm = new ResourceRecordModifier();
-                rm.setDnsClass(RecordClass.IN);
-                rm.setDnsName("dns.vertx.io");
-                rm.setDnsTtl(100);
-                rm.setDnsType(RecordType.CNAME);
-                rm.put(DnsAttribute.DOMAIN_NAME, cname);
-                set.add(rm.getEntry());
-                return set;
-            }
-        });
+    public static TestDnsServer testResolveCNAME(String cname) {
+        return testZone(TestDnsZone.builder().cname("*", cname).build());
     }
 
-    public static TestDnsServer testResolvePTR(final String ptr) {
-        return new TestDnsServer(new RecordStore() {
-            @Override
-            public Set<ResourceRecord> getRecords(QuestionRecord questionRecord) throws org.apache.directory.server.dns.DnsException {
-                Set<ResourceRecord> set = new HashSet<>();
-
-                ResourceRecordModifier rm = new ResourceRecordModifier();
-                rm.setDnsClass(RecordClass.IN);
-                rm.setDnsName("dns.vertx.io");
-                rm.setDnsTtl(100);
-                rm.setDnsType(RecordType.PTR);
-                rm.put(DnsAttribute.DOMAIN_NAME, ptr);
-                set.add(rm.getEntry());
-                return set;
-            }
-        });
+    public static TestDnsServer testResolvePTR(String ptr) {
+        return testZone(TestDnsZone.builder().ptr("*", ptr).build());
     }
 
-    public static TestDnsServer testResolveSRV(final int priority, final int weight, final int port, final String target) {
-        return new TestDnsServer(new RecordStore() {
-            @Override
-            public Set<ResourceRecord> getRecords(QuestionRecord questionRecord) throws org.apache.directory.server.dns.DnsException {
-                Set<ResourceRecord> set = new HashSet<>();
-
-                ResourceRecordModifier rm = new ResourceRecordModifier();
-                rm.setDnsClass(RecordClass.IN);
-                rm.setDnsName("dns.vertx.io");
-                rm.setDnsTtl(100);
-                rm.setDnsType(RecordType.SRV);
-                rm.put(DnsAttribute.SERVICE_PRIORITY, String.valueOf(priority));
-                rm.put(DnsAttribute.SERVICE_WEIGHT, String.valueOf(weight));
-                rm.put(DnsAttribute.SERVICE_PORT, String.valueOf(port));
-                rm.put(DnsAttribute.DOMAIN_NAME, target);
-                set.add(rm.getEntry());
-                return set;
-            }
-        });
+    public static TestDnsServer testResolveSRV(int priority, int weight, int port, String target) {
+        return testZone(TestDnsZone.builder().srv("*", priority, weight, port, target).build());
     }
 
-    public static TestDnsServer testLookup4(final String ip) {
-        return new TestDnsServer(new RecordStore() {
-            @Override
-            public Set<ResourceRecord> getRecords(QuestionRecord questionRecord) throws org.apache.directory.server.dns.DnsException {
-                Set<ResourceRecord> set = new HashSet<>();
-
-                ResourceRecordModifier rm = new ResourceRecordModifier();
-                rm.setDnsClass(RecordClass.IN);
-                rm.setDnsName("dns.vertx.io");
-                rm.setDnsTtl(100);
-                rm.setDnsType(RecordType.A);
-                rm.put(DnsAttribute.IP_ADDRESS, ip);
-
-                set.add(rm.getEntry());
-                return set;
-            }
-        });
+    public static TestDnsServer testLookup4(String ip) {
+        return testZone(TestDnsZone.builder().a("*", ip).build());
     }
 
     public static TestDnsServer testLookup6() {
-        return new TestDnsServer(new RecordStore() {
-            @Override
-            public Set<ResourceRecord> getRecords(QuestionRecord questionRecord) throws org.apache.directory.server.dns.DnsException {
-                Set<ResourceRecord> set = new HashSet<>();
-
-                ResourceRecordModifier rm = new ResourceRecordModifier();
-                rm.setDnsClass(RecordClass.IN);
-                rm.setDnsName("dns.vertx.io");
-                rm.setDnsTtl(100);
-                rm.setDnsType(RecordType.AAAA);
-                rm.put(DnsAttribute.IP_ADDRESS, "::1");
-
-                set.add(rm.getEntry());
-                return set;
-            }
-        });
+        return testZone(TestDnsZone.builder().aaaa("*", "::1").build());
     }
 
-    public static TestDnsServer testLookup(final String ip) {
+    public static TestDnsServer testLookup(String ip) {
         return testLookup4(ip);
     }
 
     public static TestDnsServer testLookupNonExisting() {
-        return new TestDnsServer(new RecordStore() {
+        return testZone(TestDnsZone.builder().build());
+    }
+
+    /**
+     * @param zone the records to answer with
+     * @return a server answering queries from the zone
+     */
+    public static TestDnsServer testZone(TestDnsZone zone) {
+        return new TestDnsServer(zone);
+    }
+
+    /**
+     * For records a zone can't hold, in any section of the response. Records with the name and type that was asked
+     * for, or with the name and type of a CNAME chain that starts there, are the answer. Any other NS and SOA records
+     * are the authority section, and all other records are the additional section.
+     * @param store the records to answer with, in the order they should be sent
+     * @return a server answering queries from the store
+     */
+    public static TestDnsServer testRecordStore(RecordStore store) {
+        return new TestDnsServer(store);
+    }
+
+    public static TestDnsServer testReverseLookup(String ptr) {
+        return testZone(TestDnsZone.builder().ptr("*", ptr).build());
+    }
+
+    /**
+     * Set the port to listen on, must be called before {@link #start()}
+     * @param port the port, or 0 for any free port
+     * @return this server
+     */
+    public TestDnsServer port(int port) {
+        this.port = port;
+        return this;
+    }
+
+    /**
+     * @return the port the server listens on, once started this is the actual port even if it was set to 0
+     */
+    public int getPort() {
+        return port;
+    }
+
+    @Override
+    public void start() throws IOException {
+        DnsProtocolHandler handler = new DnsProtocolHandler(this, store) {
             @Override
-            public Set<ResourceRecord> getRecords(QuestionRecord questionRecord) throws org.apache.directory.server.dns.DnsException {
-                return null;
+            public void sessionCreated( IoSession session ) throws Exception {
+                // USe our own codec to support AAAA testing, truncation and TCP
+                session.getFilterChain().addFirst( "codec",
+                        new ProtocolCodecFilter(new TestDnsProtocolCodecFactory(
+                            !session.getTransportMetadata().isConnectionless())));
             }
-        });
-    }
 
-    public static TestDnsServer testReverseLookup(final String ptr) {
-        return new TestDnsServer(new RecordStore() {
             @Override
-            public Set<ResourceRecord> getRecords(QuestionRecord questionRecord) throws org.apache.directory.server.dns.DnsException {
-                Set<ResourceRecord> set = new HashSet<>();
-
-                ResourceRecordModifier rm = new ResourceRecordModifier();
-                rm.setDnsClass(RecordClass.IN);
-                rm.setDnsName("dns.vertx.io");
-                rm.setDnsTtl(100);
-                rm.setDnsType(RecordType.PTR);
-                rm.put(DnsAttribute.DOMAIN_NAME, ptr);
-                set.add(rm.getEntry());
-                return set;
+            public void messageReceived(IoSession session, Object message) throws Exception {
+                DnsMessage reply = reply((DnsMessage) message);
+                if (reply != null) {
+                    session.write(reply);
+                } else {
+                    // The error response for a name the store doesn't know
+                    super.messageReceived(session, message);
+                }
             }
-        });
+        };
+
+        for (int attempt = 1; ; attempt++) {
+            UdpTransport udpTransport = new UdpTransport("127.0.0.1", port);
+            DatagramAcceptor udpAcceptor = udpTransport.getAcceptor();
+            udpAcceptor.setHandler(handler);
+
+            // Allow the port to be reused even if the socket is in TIME_WAIT state
+            ((DatagramSessionConfig)udpAcceptor.getSessionConfig()).setReuseAddress(true);
+
+            // Start the listener, UDP first so that TCP can use the same port when any free port was asked for
+            try {
+                udpAcceptor.bind();
+            } catch (IOException | RuntimeException e) {
+                udpAcceptor.dispose();
+                throw e;
+            }
+            int boundPort = ((InetSocketAddress) udpAcceptor.getLocalAddress()).getPort();
+
+            TcpTransport tcpTransport = new TcpTransport("127.0.0.1", boundPort);
+            SocketAcceptor tcpAcceptor = tcpTransport.getAcceptor();
+            tcpAcceptor.setHandler(handler);
+            tcpAcceptor.setReuseAddress(true);
+            try {
+                tcpAcceptor.bind();
+            } catch (IOException | RuntimeException e) {
+                // stop() only knows about the transports once both are bound, so release UDP here
+                tcpAcceptor.dispose();
+                udpAcceptor.dispose();
+                // The free UDP port may well be taken for TCP, another free one may not be
+                if (port == 0 && attempt < BIND_ATTEMPTS && isBindException(e)) {
+                    continue;
+                }
+                throw e;
+            }
+
+            port = boundPort;
+            setTransports( udpTransport, tcpTransport );
+            return;
+        }
     }
 
-    @Override
-    public void start() throws IOException {
-        UdpTransport transport = new UdpTransport("127.0.0.1", PORT);
-        setTransports( transport );
+    private static boolean isBindException(Throwable t) {
+        for (; t != null; t = t.getCause()) {
+            if (t instanceof BindException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * DomainNameService answers a name which has no records of the type asked for with NXDOMAIN, and puts every record
+     * in the answer section, so the reply is put together here to answer it with no records and no error (NODATA)
+     * instead, and to sort the records into sections.
+     * @return the reply to the query, or null if the store doesn't know one of the names asked for
+     */
+    private DnsMessage reply(DnsMessage request) {
+        List<ResourceRecord> answers = new ArrayList<>();
+        List<ResourceRecord> authority = new ArrayList<>();
+        List<ResourceRecord> additional = new ArrayList<>();
+        for (QuestionRecord question: request.getQuestionRecords()) {
+            Set<ResourceRecord> records;
+            try {
+                records = store.getRecords(question);
+            } catch (org.apache.directory.server.dns.DnsException e) {
+                return null;
+            }
+            if (records == null) {
+                return null;
+            }
+            // The names of the CNAME chain so far, the CNAMEs come before the records of their targets
+            Set<String> names = new HashSet<>(Collections.singleton(TestDnsZone.normalize(question.getDomainName())));
+            for (ResourceRecord record: records) {
+                RecordType type = record.getRecordType();
+                if ((type == question.getRecordType() || type == RecordType.CNAME) &&
+                    names.contains(TestDnsZone.normalize(record.getDomainName()))) {
+                    answers.add(record);
+                    if (type == RecordType.CNAME) {
+                        names.add(TestDnsZone.normalize(record.get(DnsAttribute.DOMAIN_NAME)));
+                    }
+                } else if (type == RecordType.NS || type == RecordType.SOA) {
+                    authority.add(record);
+                } else {
+                    additional.add(record);
+                }
+            }
+        }
+        DnsMessageModifier modifier = new DnsMessageModifier();
+        modifier.setTransactionId(request.getTransactionId());
+        modifier.setMessageType(MessageType.RESPONSE);
+        modifier.setOpCode(OpCode.QUERY);
+        modifier.setAuthoritativeAnswer(false);
+        modifier.setTruncated(false);
+        modifier.setRecursionDesired(request.isRecursionDesired());
+        modifier.setRecursionAvailable(false);
+        modifier.setReserved(false);
+        modifier.setAcceptNonAuthenticatedData(false);
+        modifier.setResponseCode(ResponseCode.NO_ERROR);
+        modifier.setQuestionRecords(request.getQuestionRecords());
+        modifier.setAnswerRecords(answers);
+        modifier.setAuthorityRecords(authority);
+        modifier.setAdditionalRecords(additional);
+        return modifier.getDnsMessage();
+    }
 
-        DatagramAcceptor acceptor = transport.getAcceptor();
+    /**
+     * The key of the cached response to a message, everything that goes into the response except the transaction id.
+     * The answers come from the caching store so they're always the same for the same questions.
+     */
+    private static String responseKey(DnsMessage dnsMessage) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(dnsMessage.getOpCode()).append('|').append(dnsMessage.isRecursionDesired()).append('|')
+            .append(dnsMessage.getResponseCode());
+        for (QuestionRecord question: dnsMessage.getQuestionRecords()) {
+            sb.append('|').append(question.getDomainName()).append('|').append(question.getRecordType())
+                .append('|').append(question.getRecordClass());
+        }
+        return sb.toString();
+    }
 
-        acceptor.setHandler(new DnsProtocolHandler(this, store) {
+    private static <K, V> Map<K, V> lruCache() {
+        return Collections.synchronizedMap(new LinkedHashMap<K, V>(16, 0.75f, true) {
             @Override
-            public void sessionCreated( IoSession session ) throws Exception {
-                // USe our own codec to support AAAA testing
-                session.getFilterChain().addFirst( "codec",
-                        new ProtocolCodecFilter(new TestDnsProtocolUdpCodecFactory()));
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > CACHE_SIZE;
             }
         });
+    }
+
+    /**
+     * Looks up the records for each question only once, as the zone builds new records on every lookup answered from
+     * a wildcard, which the factory methods all use. A TestDnsZone never changes so it can be cached.
+     */
+    private static final class CachingRecordStore implements RecordStore {
+        private final RecordStore store;
+        private final Map<String, Set<ResourceRecord>> records = lruCache();
+
+        CachingRecordStore(RecordStore store) {
+            this.store = store;
+        }
 
-        // Allow the port to be reused even if the socket is in TIME_WAIT state
-        ((DatagramSessionConfig)acceptor.getSessionConfig()).setReuseAddress(true);
+        @Override
+        public Set<ResourceRecord> getRecords(QuestionRecord question) throws org.apache.directory.server.dns.DnsException {
+            String key = question.getDomainName() + "|" + question.getRecordType() + "|" + question.getRecordClass();
+            Set<ResourceRecord> set = records.get(key);
+            if (set == null) {
+                set = store.getRecords(question);
+                if (set == null) {
+                    // Nothing to cache, the store will be asked again next time
+                    return null;
+                }
+                set = Collections.unmodifiableSet(set);
+                records.put(key, set);
+            }
+            return set;
+        }
+    }
 
-        // Start the listener
-        acceptor.bind();
+    /**
+     * The encoded response to a message, without the EDNS OPT record which depends on the query
+     */
+    private static final class EncodedResponse {
+        final byte[] bytes;
+        // Where the question section ends, a truncated response stops there
+        final int questionsEnd;
+
+        EncodedResponse(byte[] bytes, int questionsEnd) {
+            this.bytes = bytes;
+            this.questionsEnd = questionsEnd;
+        }
     }
 
+    @SuppressWarnings("unchecked")
+    private static Map<Integer, Integer> ednsPayloadSizes(IoSession session) {
+        Map<Integer, Integer> sizes = (Map<Integer, Integer>) session.getAttribute(EDNS_PAYLOAD_SIZES);
+        if (sizes == null) {
+            sizes = new HashMap<>();
+            session.setAttribute(EDNS_PAYLOAD_SIZES, sizes);
+        }
+        return sizes;
+    }
 
     /**
-     * ProtocolCodecFactory which allows to test AAAA resolution
+     * ProtocolCodecFactory which allows to test AAAA resolution, with any IPv6 address and alongside records of any
+     * other type in any section, as well as truncated UDP responses and queries over TCP
      */
-    private final class TestDnsProtocolUdpCodecFactory implements ProtocolCodecFactory {
-        private DnsMessageEncoder encoder = new DnsMessageEncoder();
-        private TestAAAARecordEncoder recordEncoder = new TestAAAARecordEncoder();
+    private final class TestDnsProtocolCodecFactory implements ProtocolCodecFactory {
+        private final boolean tcp;
+        private final Map<RecordType, RecordEncoder> recordEncoders = new EnumMap<>(RecordType.class);
+
+        TestDnsProtocolCodecFactory(boolean tcp) {
+            this.tcp = tcp;
+            recordEncoders.put(RecordType.A, new AddressRecordEncoder());
+            recordEncoders.put(RecordType.AAAA, new TestAAAARecordEncoder());
+            recordEncoders.put(RecordType.CNAME, new CanonicalNameRecordEncoder());
+            recordEncoders.put(RecordType.MX, new MailExchangeRecordEncoder());
+            recordEncoders.put(RecordType.NS, new NameServerRecordEncoder());
+            recordEncoders.put(RecordType.PTR, new PointerRecordEncoder());
+            recordEncoders.put(RecordType.SOA, new StartOfAuthorityRecordEncoder());
+            recordEncoders.put(RecordType.SRV, new ServerSelectionRecordEncoder());
+            recordEncoders.put(RecordType.TXT, new TextRecordEncoder());
+        }
 
         @Override
         public ProtocolEncoder getEncoder(IoSession session) throws Exception {
-            return new DnsUdpEncoder() {
+            return new ProtocolEncoderAdapter() {
 
                 @Override
                 public void encode(IoSession session, Object message, ProtocolEncoderOutput out) {
-                    IoBuffer buf = IoBuffer.allocate( 1024 );
                     DnsMessage dnsMessage = (DnsMessage) message;
-                    encoder.encode(buf, dnsMessage);
-                    for (ResourceRecord record: dnsMessage.getAnswerRecords()) {
-                        // This is a hack to allow to also test for AAAA resolution as DnsMessageEncoder does not support it and it
-                        // is hard to extend, because the interesting methods are private...
-                        // In case of RecordType.AAAA we need to encode the RecordType by ourself
-                        if (record.getRecordType() == RecordType.AAAA) {
-                            try {
-                                recordEncoder.put(buf, record);
-                            } catch (IOException e) {
-                                // Should never happen
-                                throw new IllegalStateException(e);
-                            }
+                    String key = responseKey(dnsMessage);
+                    EncodedResponse response = responses.get(key);
+                    if (response == null) {
+                        response = encodeResponse(dnsMessage);
+                        responses.put(key, response);
+                    }
+                    int id = dnsMessage.getTransactionId() & 0xFFFF;
+                    Integer payloadSize = ednsPayloadSizes(session).remove(id);
+                    boolean edns = payloadSize != null;
+                    // The OPT record is a root name, type, class, ttl and an empty rdata
+                    int optLength = edns ? 11 : 0;
+                    int length = response.bytes.length;
+                    boolean truncated = false;
+                    if (!tcp) {
+                        int limit = edns ? Math.min(Math.max(payloadSize, UDP_PAYLOAD_SIZE), EDNS_PAYLOAD_SIZE) :
+                            UDP_PAYLOAD_SIZE;
+                        if (length + optLength > limit) {
+                            truncated = true;
+                            length = response.questionsEnd;
                         }
                     }
+
+                    IoBuffer buf = IoBuffer.allocate((tcp ? 2 : 0) + length + optLength);
+                    if (tcp) {
+                        // Messages over TCP are prefixed with their length
+                        buf.putShort((short) (length + optLength));
+                    }
+                    int start = buf.position();
+                    buf.put(response.bytes, 0, length);
+                    buf.putShort(start, (short) id);
+                    if (truncated) {
+                        buf.put(start + 2, (byte) (buf.get(start + 2) | 2));
+                        buf.putShort(start + 6, (short) 0);
+                        buf.putShort(start + 8, (short) 0);
+                        buf.putShort(start + 10, (short) 0);
+                    }
+                    if (edns) {
+                        buf.putShort(start + 10, (short) (buf.getUnsignedShort(start + 10) + 1));
+                        buf.put((byte) 0);
+                        buf.putShort(OPT_TYPE);
+                        buf.putShort((short) EDNS_PAYLOAD_SIZE);
+                        buf.putInt(0);
+                        buf.putShort((short) 0);
+                    }
                     buf.flip();
 
                     out.write( buf );
@@ -328,19 +471,152 @@ public final class TestDnsServer extends DnsServer {
             };
         }
 
+        private EncodedResponse encodeResponse(DnsMessage dnsMessage) {
+            // DnsMessageEncoder skips AAAA records, and its per section methods are private, so the whole message is
+            // encoded here with the record encoders of each type
+            IoBuffer buf = IoBuffer.allocate(512).setAutoExpand(true);
+            buf.putShort((short) dnsMessage.getTransactionId());
+            buf.put((byte) ((dnsMessage.getMessageType().convert() << 7) | (dnsMessage.getOpCode().convert() << 3) |
+                (dnsMessage.isAuthoritativeAnswer() ? 4 : 0) | (dnsMessage.isTruncated() ? 2 : 0) |
+                (dnsMessage.isRecursionDesired() ? 1 : 0)));
+            buf.put((byte) ((dnsMessage.isRecursionAvailable() ? 0x80 : 0) | (dnsMessage.isReserved() ? 0x40 : 0) |
+                (dnsMessage.isAcceptNonAuthenticatedData() ? 0x20 : 0) | dnsMessage.getResponseCode().convert()));
+            buf.putShort((short) size(dnsMessage.getQuestionRecords()));
+            buf.putShort((short) size(dnsMessage.getAnswerRecords()));
+            buf.putShort((short) size(dnsMessage.getAuthorityRecords()));
+            buf.putShort((short) size(dnsMessage.getAdditionalRecords()));
+            for (QuestionRecord question: dnsMessage.getQuestionRecords()) {
+                putDomainName(buf, question.getDomainName());
+                buf.putShort(question.getRecordType().convert());
+                buf.putShort(question.getRecordClass().convert());
+            }
+            int questionsEnd = buf.position();
+            putRecords(buf, dnsMessage.getAnswerRecords());
+            putRecords(buf, dnsMessage.getAuthorityRecords());
+            putRecords(buf, dnsMessage.getAdditionalRecords());
+            buf.flip();
+            byte[] response = new byte[buf.remaining()];
+            buf.get(response);
+            return new EncodedResponse(response, questionsEnd);
+        }
+
+        private int size(List<?> records) {
+            return records == null ? 0 : records.size();
+        }
+
+        private void putRecords(IoBuffer buf, List<ResourceRecord> records) {
+            if (records == null) {
+                return;
+            }
+            for (ResourceRecord record: records) {
+                RecordEncoder recordEncoder = recordEncoders.get(record.getRecordType());
+                if (recordEncoder == null) {
+                    throw new IllegalStateException("Cannot encode " + record.getRecordType() + " records");
+                }
+                try {
+                    recordEncoder.put(buf, record);
+                } catch (IOException e) {
+                    // Should never happen
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+
+        private void putDomainName(IoBuffer buf, String name) {
+            for (String label: name.split("\\.")) {
+                if (!label.isEmpty()) {
+                    byte[] bytes = label.getBytes(StandardCharsets.US_ASCII);
+                    buf.put((byte) bytes.length);
+                    buf.put(bytes);
+                }
+            }
+            buf.put((byte) 0);
+        }
+
         @Override
         public ProtocolDecoder getDecoder(IoSession session) throws Exception {
-            return new DnsUdpDecoder();
+            return new CumulativeProtocolDecoder() {
+                private final DnsMessageDecoder decoder = new DnsMessageDecoder();
+
+                @Override
+                protected boolean doDecode(IoSession session, IoBuffer in, ProtocolDecoderOutput out) throws Exception {
+                    IoBuffer message;
+                    if (tcp) {
+                        // Messages over TCP are prefixed with their length, wait until a whole one has arrived
+                        if (!in.prefixedDataAvailable(2)) {
+                            return false;
+                        }
+                        message = in.getSlice(in.getUnsignedShort());
+                    } else {
+                        message = in.getSlice(in.remaining());
+                    }
+                    out.write(decoder.decode(removeOpt(session, message)));
+                    return true;
+                }
+            };
+        }
+
+        /**
+         * DnsMessageDecoder has no decoder for OPT records, so the OPT record of an EDNS query is taken out of its
+         * additional section before the query is decoded, and the payload size it advertises is kept for the response.
+         */
+        private IoBuffer removeOpt(IoSession session, IoBuffer message) {
+            int additionalCount = message.getUnsignedShort(10);
+            if (additionalCount == 0) {
+                return message;
+            }
+            int pos = 12;
+            for (int i = message.getUnsignedShort(4); i > 0; i--) {
+                pos = skipDomainName(message, pos) + 4;
+            }
+            int recordCount = message.getUnsignedShort(6) + message.getUnsignedShort(8);
+            for (int i = 0; i < recordCount; i++) {
+                pos = skipRecord(message, pos);
+            }
+            IoBuffer stripped = IoBuffer.allocate(message.limit());
+            stripped.put(message.getSlice(0, pos));
+            int kept = 0;
+            for (int i = 0; i < additionalCount; i++) {
+                int next = skipRecord(message, pos);
+                int typePos = skipDomainName(message, pos);
+                if (message.getShort(typePos) == OPT_TYPE) {
+                    // The class of an OPT record is the payload size
+                    ednsPayloadSizes(session).put(message.getUnsignedShort(0), message.getUnsignedShort(typePos + 2));
+                } else {
+                    stripped.put(message.getSlice(pos, next - pos));
+                    kept++;
+                }
+                pos = next;
+            }
+            stripped.putShort(10, (short) kept);
+            stripped.flip();
+            return stripped;
+        }
+
+        private int skipRecord(IoBuffer message, int pos) {
+            // Name, type, class, ttl, then the length of the rdata
+            pos = skipDomainName(message, pos) + 8;
+            return pos + 2 + message.getUnsignedShort(pos);
+        }
+
+        private int skipDomainName(IoBuffer message, int pos) {
+            while (true) {
+                int length = message.getUnsigned(pos);
+                if (length == 0) {
+                    return pos + 1;
+                }
+                if ((length & 0xC0) == 0xC0) {
+                    // A pointer to a name elsewhere in the message ends the name
+                    return pos + 2;
+                }
+                pos += 1 + length;
+            }
         }
 
         private final class TestAAAARecordEncoder extends ResourceRecordEncoder {
             @Override
             protected void putResourceRecordData(IoBuffer ioBuffer, ResourceRecord resourceRecord) {
-                if (!resourceRecord.get(DnsAttribute.IP_ADDRESS).equals("::1")) {
-                    throw new IllegalStateException("Only supposed to be used with IPV6 address of ::1");
-                }
-                // encode the ::1
-                ioBuffer.put(new byte[]{0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1});
+                ioBuffer.put(TestDnsZone.ipv6Address(resourceRecord.get(DnsAttribute.IP_ADDRESS)));
             }
         }
     }
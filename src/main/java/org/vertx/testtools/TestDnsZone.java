@@ -0,0 +1,329 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.testtools;
+
+import org.apache.directory.server.dns.DnsException;
+import org.apache.directory.server.dns.messages.*;
+import org.apache.directory.server.dns.store.DnsAttribute;
+import org.apache.directory.server.dns.store.RecordStore;
+
+import java.util.*;
+
+/**
+ * An in memory zone for {@link TestDnsServer} holding any number of records for any number of names.
+ *
+ * The zone is put together with a {@link Builder} and can't be changed afterwards, so the records for each name and
+ * type, including those reached through a CNAME, are worked out once when it is built and looked up without copying.
+ * Names are matched ignoring case and any trailing dot.
+ *
+ * A name starting with <code>*.</code> is a wildcard, answering for any name below it that has no records of its
+ * own, with records carrying the name that was asked for, and <code>*</code> on its own answers for any name at all.
+ * If a name has a CNAME record, queries for other types are answered with the CNAMEs of the chain followed by the
+ * records at its end, following CNAMEs from target to target as long as the targets are in the zone and stopping at
+ * any loop. Targets are looked up by their exact name, not through wildcards.
+ *
+ * A query for a name that isn't in the zone is answered with NXDOMAIN, and a query for a name that is in the zone but
+ * has no records of the type asked for is answered with no records and no error (NODATA).
+ */
+public final class TestDnsZone implements RecordStore {
+
+    private final Map<String, Map<RecordType, Set<ResourceRecord>>> records;
+
+    private TestDnsZone(Map<String, Map<RecordType, Set<ResourceRecord>>> records) {
+        this.records = records;
+    }
+
+    /**
+     * @return a builder for a new zone
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Set<ResourceRecord> getRecords(QuestionRecord question) throws DnsException {
+        String name = normalize(question.getDomainName());
+        RecordType type = question.getRecordType();
+        Map<RecordType, Set<ResourceRecord>> byType = records.get(name);
+        if (byType != null) {
+            return answer(byType, type);
+        }
+        // Try the closest wildcard, dropping one label at a time down to * on its own
+        for (int dot = name.indexOf('.'); ; dot = name.indexOf('.', dot + 1)) {
+            byType = records.get(dot == -1 ? "*" : "*" + name.substring(dot));
+            if (byType != null) {
+                Set<ResourceRecord> set = new LinkedHashSet<>();
+                for (ResourceRecord record: answer(byType, type)) {
+                    set.add(rename(record, name));
+                }
+                return set;
+            }
+            if (dot == -1) {
+                break;
+            }
+        }
+        throw new DnsException(ResponseCode.NAME_ERROR);
+    }
+
+    private static Set<ResourceRecord> answer(Map<RecordType, Set<ResourceRecord>> byType, RecordType type) {
+        Set<ResourceRecord> set = byType.get(type);
+        if (set != null) {
+            return set;
+        }
+        // None of the targets of the CNAME have records of this type, if there is one
+        Set<ResourceRecord> cnames = byType.get(RecordType.CNAME);
+        return cnames != null ? cnames : Collections.<ResourceRecord>emptySet();
+    }
+
+    private static ResourceRecord rename(ResourceRecord record, String name) {
+        ResourceRecordModifier rm = new ResourceRecordModifier();
+        rm.setDnsClass(record.getRecordClass());
+        rm.setDnsName(name);
+        rm.setDnsTtl(record.getTimeToLive());
+        rm.setDnsType(record.getRecordType());
+        for (String attribute: ATTRIBUTES) {
+            String value = record.get(attribute);
+            if (value != null) {
+                rm.put(attribute, value);
+            }
+        }
+        return rm.getEntry();
+    }
+
+    private static final String[] ATTRIBUTES = {DnsAttribute.IP_ADDRESS, DnsAttribute.DOMAIN_NAME,
+        DnsAttribute.MX_PREFERENCE, DnsAttribute.CHARACTER_STRING, DnsAttribute.SERVICE_PRIORITY,
+        DnsAttribute.SERVICE_WEIGHT, DnsAttribute.SERVICE_PORT};
+
+    static String normalize(String name) {
+        name = name.toLowerCase(Locale.ENGLISH);
+        return name.endsWith(".") ? name.substring(0, name.length() - 1) : name;
+    }
+
+    /**
+     * Parse an IPv6 literal without resolving anything. InetAddress.getByName would look up anything that isn't a
+     * literal as a host name, and turns an IPv4-mapped address such as <code>::ffff:1.2.3.4</code> into 4 bytes.
+     * @param literal eight groups of hex digits separated by colons, with <code>::</code> for any run of zero groups
+     * and optionally an IPv4 address in dotted notation for the last two
+     * @return the 16 bytes of the address
+     * @throws IllegalArgumentException if it isn't an IPv6 literal
+     */
+    static byte[] ipv6Address(String literal) {
+        String[] halves = literal.split("::", -1);
+        if (literal.indexOf(':') == -1 || halves.length > 2) {
+            throw notIpv6(literal);
+        }
+        byte[] head = groups(halves[0], halves.length == 1, literal);
+        byte[] tail = halves.length == 2 ? groups(halves[1], true, literal) : new byte[0];
+        // :: stands for at least one group
+        if (halves.length == 1 ? head.length != 16 : head.length + tail.length > 14) {
+            throw notIpv6(literal);
+        }
+        byte[] address = new byte[16];
+        System.arraycopy(head, 0, address, 0, head.length);
+        System.arraycopy(tail, 0, address, 16 - tail.length, tail.length);
+        return address;
+    }
+
+    private static byte[] groups(String part, boolean last, String literal) {
+        if (part.isEmpty()) {
+            return new byte[0];
+        }
+        String[] groups = part.split(":", -1);
+        byte[] bytes = new byte[groups.length * 2 + 2];
+        int length = 0;
+        for (int i = 0; i < groups.length; i++) {
+            if (last && i == groups.length - 1 && groups[i].indexOf('.') != -1) {
+                String[] octets = groups[i].split("\\.", -1);
+                if (octets.length != 4) {
+                    throw notIpv6(literal);
+                }
+                for (String octet: octets) {
+                    bytes[length++] = (byte) parse(octet, 10, 3, 0xFF, literal);
+                }
+            } else {
+                int group = parse(groups[i], 16, 4, 0xFFFF, literal);
+                bytes[length++] = (byte) (group >> 8);
+                bytes[length++] = (byte) group;
+            }
+        }
+        return Arrays.copyOf(bytes, length);
+    }
+
+    private static int parse(String digits, int radix, int maxDigits, int max, String literal) {
+        if (digits.isEmpty() || digits.length() > maxDigits) {
+            throw notIpv6(literal);
+        }
+        int value = 0;
+        for (int i = 0; i < digits.length(); i++) {
+            char c = digits.charAt(i);
+            int digit = c < 128 ? Character.digit(c, radix) : -1;
+            if (digit == -1) {
+                throw notIpv6(literal);
+            }
+            value = value * radix + digit;
+        }
+        if (value > max) {
+            throw notIpv6(literal);
+        }
+        return value;
+    }
+
+    private static IllegalArgumentException notIpv6(String literal) {
+        return new IllegalArgumentException("Not an IPv6 literal: " + literal);
+    }
+
+    /**
+     * Collects the records of a zone. Each method adds one record and returns the builder.
+     */
+    public static final class Builder {
+
+        private final Map<String, Map<RecordType, Set<ResourceRecord>>> records = new HashMap<>();
+        private int ttl = 100;
+
+        private Builder() {
+        }
+
+        /**
+         * Set the time to live of the records added after this
+         */
+        public Builder ttl(int ttl) {
+            this.ttl = ttl;
+            return this;
+        }
+
+        public Builder a(String name, String ipAddress) {
+            return add(name, RecordType.A, DnsAttribute.IP_ADDRESS, ipAddress);
+        }
+
+        /**
+         * @throws IllegalArgumentException if the address isn't an IPv6 literal
+         */
+        public Builder aaaa(String name, String ipAddress) {
+            ipv6Address(ipAddress);
+            return add(name, RecordType.AAAA, DnsAttribute.IP_ADDRESS, ipAddress);
+        }
+
+        public Builder cname(String name, String cname) {
+            return add(name, RecordType.CNAME, DnsAttribute.DOMAIN_NAME, cname);
+        }
+
+        public Builder ns(String name, String ns) {
+            return add(name, RecordType.NS, DnsAttribute.DOMAIN_NAME, ns);
+        }
+
+        public Builder ptr(String name, String ptr) {
+            return add(name, RecordType.PTR, DnsAttribute.DOMAIN_NAME, ptr);
+        }
+
+        public Builder txt(String name, String txt) {
+            return add(name, RecordType.TXT, DnsAttribute.CHARACTER_STRING, txt);
+        }
+
+        public Builder mx(String name, int prio, String mxRecord) {
+            return add(name, RecordType.MX, DnsAttribute.MX_PREFERENCE, String.valueOf(prio),
+                DnsAttribute.DOMAIN_NAME, mxRecord);
+        }
+
+        public Builder srv(String name, int priority, int weight, int port, String target) {
+            return add(name, RecordType.SRV, DnsAttribute.SERVICE_PRIORITY, String.valueOf(priority),
+                DnsAttribute.SERVICE_WEIGHT, String.valueOf(weight), DnsAttribute.SERVICE_PORT, String.valueOf(port),
+                DnsAttribute.DOMAIN_NAME, target);
+        }
+
+        private Builder add(String name, RecordType type, String... attributes) {
+            ResourceRecordModifier rm = new ResourceRecordModifier();
+            rm.setDnsClass(RecordClass.IN);
+            rm.setDnsName(name);
+            rm.setDnsTtl(ttl);
+            rm.setDnsType(type);
+            for (int i = 0; i < attributes.length; i += 2) {
+                rm.put(attributes[i], attributes[i + 1]);
+            }
+            String key = normalize(name);
+            Map<RecordType, Set<ResourceRecord>> byType = records.get(key);
+            if (byType == null) {
+                byType = new EnumMap<>(RecordType.class);
+                records.put(key, byType);
+            }
+            Set<ResourceRecord> set = byType.get(type);
+            if (set == null) {
+                set = new LinkedHashSet<>();
+                byType.put(type, set);
+            }
+            set.add(rm.getEntry());
+            return this;
+        }
+
+        /**
+         * @return the zone with the records added so far
+         */
+        public TestDnsZone build() {
+            Map<String, Map<RecordType, Set<ResourceRecord>>> frozen = new HashMap<>();
+            for (Map.Entry<String, Map<RecordType, Set<ResourceRecord>>> entry: records.entrySet()) {
+                Map<RecordType, Set<ResourceRecord>> byType = new EnumMap<>(RecordType.class);
+                for (Map.Entry<RecordType, Set<ResourceRecord>> typed: entry.getValue().entrySet()) {
+                    byType.put(typed.getKey(), Collections.unmodifiableSet(new LinkedHashSet<>(typed.getValue())));
+                }
+                Set<ResourceRecord> cnames = entry.getValue().get(RecordType.CNAME);
+                if (cnames != null) {
+                    byType.putAll(chase(entry.getKey(), cnames, entry.getValue().keySet()));
+                }
+                frozen.put(entry.getKey(), Collections.unmodifiableMap(byType));
+            }
+            return new TestDnsZone(Collections.unmodifiableMap(frozen));
+        }
+
+        /**
+         * Work out the answer for each type of record found at the end of a name's CNAME chains and that the name
+         * itself doesn't have. The CNAMEs come first as resolvers follow the chain in the order of the answer.
+         */
+        private Map<RecordType, Set<ResourceRecord>> chase(String name, Set<ResourceRecord> cnames,
+                                                           Set<RecordType> own) {
+            Set<ResourceRecord> chain = new LinkedHashSet<>(cnames);
+            Map<RecordType, Set<ResourceRecord>> ends = new EnumMap<>(RecordType.class);
+            // The names already followed, so that a loop of CNAMEs ends
+            Set<String> visited = new HashSet<>(Collections.singleton(name));
+            Deque<ResourceRecord> pending = new ArrayDeque<>(cnames);
+            while (!pending.isEmpty()) {
+                String target = normalize(pending.poll().get(DnsAttribute.DOMAIN_NAME));
+                Map<RecordType, Set<ResourceRecord>> byType = records.get(target);
+                if (!visited.add(target) || byType == null) {
+                    continue;
+                }
+                for (Map.Entry<RecordType, Set<ResourceRecord>> typed: byType.entrySet()) {
+                    if (typed.getKey() == RecordType.CNAME) {
+                        chain.addAll(typed.getValue());
+                        pending.addAll(typed.getValue());
+                    } else if (!own.contains(typed.getKey())) {
+                        Set<ResourceRecord> set = ends.get(typed.getKey());
+                        if (set == null) {
+                            set = new LinkedHashSet<>();
+                            ends.put(typed.getKey(), set);
+                        }
+                        set.addAll(typed.getValue());
+                    }
+                }
+            }
+            Map<RecordType, Set<ResourceRecord>> chased = new EnumMap<>(RecordType.class);
+            for (Map.Entry<RecordType, Set<ResourceRecord>> typed: ends.entrySet()) {
+                Set<ResourceRecord> set = new LinkedHashSet<>(chain);
+                set.addAll(typed.getValue());
+                chased.put(typed.getKey(), Collections.unmodifiableSet(set));
+            }
+            return chased;
+        }
+    }
+}
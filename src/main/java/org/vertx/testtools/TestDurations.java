@@ -0,0 +1,153 @@
+package org.vertx.testtools;
+/*
+ * Copyright 2013 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+/**
+ * Keeps the durations of previous runs of each test in a local file so that the timeout for a test can be derived
+ * from how long it usually takes.
+ *
+ * The file is <code>vertx-test-durations.properties</code> in the build directory unless set with the
+ * <code>vertx.test.durations</code> system property. For each test the last {@link #MAX_SAMPLES} durations are kept,
+ * and once there are at least {@link #MIN_SAMPLES} of them the timeout is <code>vertx.test.timeout.multiplier</code>
+ * (default 5) times their 99th percentile, but never less than {@link #MIN_TIMEOUT} milliseconds.
+ */
+final class TestDurations {
+
+  static final int MAX_SAMPLES = 50;
+  static final int MIN_SAMPLES = 5;
+  static final long MIN_TIMEOUT = 5000;
+
+  private static TestDurations instance;
+
+  private final File file;
+  private final long multiplier;
+  private final Map<String, LinkedList<Long>> durations = new HashMap<>();
+  private final Map<String, LinkedList<Long>> recorded = new HashMap<>();
+
+  static synchronized TestDurations instance() {
+    if (instance == null) {
+      String fileName = System.getProperty("vertx.test.durations");
+      File file = fileName != null ? new File(fileName) :
+          new File(JavaClassRunner.getBuildDir(), "vertx-test-durations.properties");
+      instance = new TestDurations(file, Long.getLong("vertx.test.timeout.multiplier", 5));
+    }
+    return instance;
+  }
+
+  TestDurations(File file, long multiplier) {
+    this.file = file;
+    this.multiplier = multiplier;
+    for (Map.Entry<String, String> entry: PropertiesFile.load(file).entrySet()) {
+      durations.put(entry.getKey(), parse(entry.getValue()));
+    }
+  }
+
+  /**
+   * Get the timeout for a test based on its previous durations
+   * @param test the name of the test
+   * @param limit the timeout to use when there isn't enough history, the result is never more than this
+   * @return the timeout in milliseconds
+   */
+  synchronized long timeout(String test, long limit) {
+    LinkedList<Long> samples = durations.get(test);
+    if (samples == null || samples.size() < MIN_SAMPLES) {
+      return limit;
+    }
+    Long[] sorted = samples.toArray(new Long[samples.size()]);
+    Arrays.sort(sorted);
+    // Nearest rank percentile
+    long p99 = sorted[(int)Math.ceil(0.99 * sorted.length) - 1];
+    return Math.min(limit, Math.max(MIN_TIMEOUT, p99 * multiplier));
+  }
+
+  /**
+   * Record the duration of a successful run of a test
+   * @param test the name of the test
+   * @param millis the duration in milliseconds
+   */
+  synchronized void record(String test, long millis) {
+    add(durations, test, millis);
+    add(recorded, test, millis);
+  }
+
+  /**
+   * Write the durations recorded by this JVM to the file. The file is read again under a lock first so that
+   * durations written by other JVMs since it was loaded are kept.
+   */
+  synchronized void save() {
+    if (recorded.isEmpty()) {
+      return;
+    }
+    PropertiesFile.update(file, new PropertiesFile.Update() {
+      public void apply(Map<String, String> current) {
+        for (Map.Entry<String, LinkedList<Long>> entry: recorded.entrySet()) {
+          LinkedList<Long> samples = current.containsKey(entry.getKey()) ? parse(current.get(entry.getKey())) :
+              new LinkedList<Long>();
+          for (Long sample: entry.getValue()) {
+            samples.add(sample);
+            if (samples.size() > MAX_SAMPLES) {
+              samples.removeFirst();
+            }
+          }
+          current.put(entry.getKey(), format(samples));
+        }
+      }
+    }, "Durations in milliseconds of the last runs of each test");
+    recorded.clear();
+  }
+
+  private static void add(Map<String, LinkedList<Long>> map, String test, long millis) {
+    LinkedList<Long> samples = map.get(test);
+    if (samples == null) {
+      samples = new LinkedList<>();
+      map.put(test, samples);
+    }
+    samples.add(millis);
+    if (samples.size() > MAX_SAMPLES) {
+      samples.removeFirst();
+    }
+  }
+
+  private static LinkedList<Long> parse(String value) {
+    LinkedList<Long> samples = new LinkedList<>();
+    for (String sample: value.split(",")) {
+      try {
+        samples.add(Long.valueOf(sample.trim()));
+      } catch (NumberFormatException e) {
+        // Ignore
+      }
+    }
+    return samples;
+  }
+
+  private static String format(LinkedList<Long> samples) {
+    StringBuilder sb = new StringBuilder();
+    for (Long sample: samples) {
+      if (sb.length() > 0) {
+        sb.append(',');
+      }
+      sb.append(sample);
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,236 @@
+package org.vertx.testtools;
+/*
+ * Copyright 2013 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+import io.netty.buffer.ByteBuf;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.streams.ReadStream;
+
+/**
+ * A large payload of pseudo random bytes that is never held in memory. Each byte is worked out from the seed and its
+ * offset, so the payload can be produced and checked in chunks of any size with constant memory, and the same seed
+ * always gives the same bytes.
+ *
+ * To send the payload, pump a {@link #readStream(Vertx, int)} into the WriteStream under test. On the receiving side,
+ * give each chunk to a {@link #verifier()} and check it once the transfer has ended.
+ */
+public final class TestPayload {
+
+  private final long seed;
+  private final long length;
+
+  /**
+   * @param seed the seed the bytes are derived from
+   * @param length the number of bytes in the payload
+   */
+  public TestPayload(long seed, long length) {
+    this.seed = seed;
+    this.length = length;
+  }
+
+  public long length() {
+    return length;
+  }
+
+  /**
+   * Copy part of the payload into an array
+   * @param offset the offset in the payload of the first byte to copy
+   * @param dst the array to copy to
+   * @param dstIndex the index in the array of the first byte
+   * @param len the number of bytes to copy
+   */
+  public void getBytes(long offset, byte[] dst, int dstIndex, int len) {
+    if (offset < 0 || len < 0 || offset + len > length) {
+      throw new IndexOutOfBoundsException("Bytes " + offset + " to " + (offset + len) + " of " + length);
+    }
+    long word = word(offset >>> 3);
+    for (int i = 0; i < len; i++) {
+      long pos = offset + i;
+      if (i > 0 && (pos & 7) == 0) {
+        word = word(pos >>> 3);
+      }
+      dst[dstIndex + i] = (byte) (word >>> ((pos & 7) << 3));
+    }
+  }
+
+  /**
+   * @param vertx the Vert.x instance whose context the chunks are delivered on
+   * @param chunkSize the size of the Buffers to deliver
+   * @return a stream of the payload, which starts delivering chunks as soon as it has a data handler
+   */
+  public PayloadReadStream readStream(Vertx vertx, int chunkSize) {
+    return new PayloadReadStream(vertx, chunkSize);
+  }
+
+  /**
+   * @return a new verifier for a transfer of the payload
+   */
+  public Verifier verifier() {
+    return new Verifier();
+  }
+
+  // The SplitMix64 finaliser of the word index, the same word for the same seed and index every time
+  private long word(long index) {
+    long z = seed + (index + 1) * 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  /**
+   * Delivers the payload one chunk per turn of the event loop while it isn't paused, so it can be pumped into a
+   * WriteStream and honours its back pressure.
+   */
+  public final class PayloadReadStream implements ReadStream<PayloadReadStream> {
+
+    private final Vertx vertx;
+    private final int chunkSize;
+    private long offset;
+    private boolean paused;
+    private boolean scheduled;
+    private Handler<Buffer> dataHandler;
+    private Handler<Void> endHandler;
+
+    PayloadReadStream(Vertx vertx, int chunkSize) {
+      this.vertx = vertx;
+      this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public PayloadReadStream dataHandler(Handler<Buffer> handler) {
+      dataHandler = handler;
+      schedule();
+      return this;
+    }
+
+    @Override
+    public PayloadReadStream pause() {
+      paused = true;
+      return this;
+    }
+
+    @Override
+    public PayloadReadStream resume() {
+      paused = false;
+      schedule();
+      return this;
+    }
+
+    @Override
+    public PayloadReadStream endHandler(Handler<Void> handler) {
+      endHandler = handler;
+      // The stream may already be exhausted, as an empty payload is as soon as it has a data handler
+      schedule();
+      return this;
+    }
+
+    @Override
+    public PayloadReadStream exceptionHandler(Handler<Throwable> handler) {
+      // Generating the payload can't fail
+      return this;
+    }
+
+    private void schedule() {
+      if (!scheduled && !paused && dataHandler != null) {
+        scheduled = true;
+        vertx.runOnContext(new Handler<Void>() {
+          public void handle(Void v) {
+            scheduled = false;
+            deliver();
+          }
+        });
+      }
+    }
+
+    private void deliver() {
+      if (paused || dataHandler == null) {
+        return;
+      }
+      if (offset < length) {
+        int size = (int) Math.min(chunkSize, length - offset);
+        byte[] chunk = new byte[size];
+        getBytes(offset, chunk, 0, size);
+        offset += size;
+        dataHandler.handle(new Buffer(chunk));
+      }
+      if (offset < length) {
+        schedule();
+      } else if (endHandler != null) {
+        Handler<Void> handler = endHandler;
+        endHandler = null;
+        handler.handle(null);
+      }
+    }
+  }
+
+  /**
+   * Checks the chunks of a transfer of the payload as they arrive, keeping only the offset reached and the first
+   * offset that didn't match.
+   */
+  public final class Verifier implements Handler<Buffer> {
+
+    private long received;
+    private long mismatch = -1;
+    private byte[] actual = new byte[0];
+    private byte[] expected = new byte[0];
+
+    @Override
+    public void handle(Buffer chunk) {
+      int size = chunk.length();
+      if (mismatch == -1) {
+        // Only the part of the chunk within the payload can be compared, anything past its end is a mismatch
+        int len = (int) Math.max(0, Math.min(size, length - received));
+        if (actual.length < len) {
+          actual = new byte[len];
+          expected = new byte[len];
+        }
+        ByteBuf buf = chunk.getByteBuf();
+        buf.getBytes(0, actual, 0, len);
+        getBytes(received, expected, 0, len);
+        int i = TestUtils.mismatch(actual, expected, len);
+        if (i < size) {
+          mismatch = received + i;
+        }
+      }
+      received += size;
+    }
+
+    /**
+     * @return the number of bytes received so far
+     */
+    public long received() {
+      return received;
+    }
+
+    /**
+     * @return the offset of the first byte that didn't match the payload or was more than its length, or -1 if all
+     * the bytes received so far match
+     */
+    public long mismatch() {
+      return mismatch;
+    }
+
+    /**
+     * @return true if exactly the whole payload has been received
+     */
+    public boolean isComplete() {
+      return mismatch == -1 && received == length;
+    }
+  }
+}
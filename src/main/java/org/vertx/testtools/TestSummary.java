@@ -0,0 +1,129 @@
+package org.vertx.testtools;
+/*
+ * Copyright 2013 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sums up the {@link TestTimings} of a set of tests: the time spent deploying and undeploying test verticles against
+ * the time spent running the tests, how the test durations are spread, and which tests took longest. The duration of
+ * a test is the sum of all its phases.
+ *
+ * Each runner keeps one for its class which is printed when the class finishes, and there is one for the whole JVM
+ * which is printed when the JVM exits. The summaries are off unless the <code>vertx.test.summary.top</code> system
+ * property is set to the number of slowest tests to list, e.g. <code>-Dvertx.test.summary.top=10</code>.
+ */
+final class TestSummary {
+
+  static final int TOP = Integer.getInteger("vertx.test.summary.top", 0);
+  // Upper bounds of the buckets of the duration histogram in milliseconds, the last bucket has no upper bound
+  static final long[] BUCKETS = {10, 100, 1000, 10000};
+
+  private static TestSummary instance;
+
+  private final List<Entry> entries = new ArrayList<>();
+  private long deployNanos;
+  private long runNanos;
+  private long undeployNanos;
+
+  /**
+   * @return the summary of all the tests run in this JVM, printed when the JVM exits
+   */
+  static synchronized TestSummary instance() {
+    if (instance == null) {
+      instance = new TestSummary();
+      if (TOP > 0) {
+        Runtime.getRuntime().addShutdownHook(new Thread("vertx-test-summary") {
+          public void run() {
+            if (instance.size() > 0) {
+              System.out.println(instance.format(TOP));
+            }
+          }
+        });
+      }
+    }
+    return instance;
+  }
+
+  synchronized void add(String test, TestTimings timings) {
+    entries.add(new Entry(test, timings.deployNanos() + timings.runNanos() + timings.undeployNanos()));
+    deployNanos += timings.deployNanos();
+    runNanos += timings.runNanos();
+    undeployNanos += timings.undeployNanos();
+  }
+
+  synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * @return one line with the number of tests and the total time spent in each phase
+   */
+  synchronized String totals() {
+    return entries.size() + " tests, deploy " + millis(deployNanos) + " ms, run " + millis(runNanos) +
+        " ms, undeploy " + millis(undeployNanos) + " ms";
+  }
+
+  /**
+   * @param top the number of slowest tests to list
+   * @return the totals, the histogram of durations and the slowest tests, one per line
+   */
+  synchronized String format(int top) {
+    StringBuilder sb = new StringBuilder("Test summary: ").append(totals()).append('\n');
+    int[] counts = new int[BUCKETS.length + 1];
+    for (Entry entry: entries) {
+      int i = 0;
+      while (i < BUCKETS.length && millis(entry.nanos) >= BUCKETS[i]) {
+        i++;
+      }
+      counts[i]++;
+    }
+    for (int i = 0; i < counts.length; i++) {
+      String range = i == BUCKETS.length ? ">= " + BUCKETS[i - 1] + " ms" : "< " + BUCKETS[i] + " ms";
+      sb.append("  ").append(range).append(": ").append(counts[i]).append('\n');
+    }
+    List<Entry> sorted = new ArrayList<>(entries);
+    Collections.sort(sorted, new Comparator<Entry>() {
+      public int compare(Entry e1, Entry e2) {
+        return Long.compare(e2.nanos, e1.nanos);
+      }
+    });
+    sb.append("Slowest tests:\n");
+    for (Entry entry: sorted.subList(0, Math.min(top, sorted.size()))) {
+      sb.append("  ").append(millis(entry.nanos)).append(" ms ").append(entry.test).append('\n');
+    }
+    return sb.toString();
+  }
+
+  private static long millis(long nanos) {
+    return TimeUnit.NANOSECONDS.toMillis(nanos);
+  }
+
+  private static class Entry {
+    final String test;
+    final long nanos;
+
+    Entry(String test, long nanos) {
+      this.test = test;
+      this.nanos = nanos;
+    }
+  }
+}
@@ -0,0 +1,37 @@
+package org.vertx.testtools;
+/*
+ * Copyright 2013 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+import java.lang.annotation.*;
+
+/**
+ * How long each phase of a test took, in nanoseconds. JavaClassRunner adds this to the Description of each test it
+ * reports as finished, so a RunListener can get it with <code>description.getAnnotation(TestTimings.class)</code>.
+ * A phase that didn't happen for the test, such as undeploying a verticle deployed for the whole class, is 0.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+public @interface TestTimings {
+  /** Deploying the test verticle, or the deployment shared by the class for the first test that uses it */
+  long deployNanos();
+  /** From the test verticle being deployed, or asked to run the test, until its result arrived */
+  long runNanos();
+  /** Undeploying the test verticle */
+  long undeployNanos();
+  /** Between the test verticle sending its result and the runner receiving it */
+  long eventBusNanos();
+}
@@ -16,8 +16,14 @@ package org.vertx.testtools;
  *
  */
 
+import io.netty.buffer.ByteBuf;
 import org.vertx.java.core.buffer.Buffer;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
 /**
  * Static helper methods for dealing with buffers, strings and byte arrays.
  */
@@ -50,14 +56,27 @@ public class TestUtils {
      * @return an array of random bytes
      */
     public static byte[] generateRandomByteArray(int length, boolean avoid, byte avoidByte) {
-      byte[] line = new byte[length];
-      for (int i = 0; i < length; i++) {
-        byte rand;
-        do {
-          rand = (byte) ((int) (Math.random() * 255) - 128);
-        } while (avoid && rand == avoidByte);
+      return generateRandomByteArray(length, avoid, avoidByte, ThreadLocalRandom.current());
+    }
 
-        line[i] = rand;
+    /**
+     * Create an array of random bytes, taken from the given Random so a seeded one gives the same bytes every time
+     * @param length The length of the created array
+     * @param avoid If true, the resulting array will not contain avoidByte
+     * @param avoidByte A byte that is not to be included in the resulting array
+     * @param random The source of the bytes
+     * @return an array of random bytes
+     */
+    public static byte[] generateRandomByteArray(int length, boolean avoid, byte avoidByte, Random random) {
+      byte[] line = new byte[length];
+      random.nextBytes(line);
+      if (avoid) {
+        // Replace each avoidByte with one of the other 255 values, which keeps them all equally likely
+        for (int i = 0; i < length; i++) {
+          if (line[i] == avoidByte) {
+            line[i] = (byte) (avoidByte + 1 + random.nextInt(255));
+          }
+        }
       }
       return line;
     }
@@ -70,7 +89,19 @@ public class TestUtils {
      * @return a Buffer of random bytes
      */
     public static Buffer generateRandomBuffer(int length, boolean avoid, byte avoidByte) {
-      byte[] line = generateRandomByteArray(length, avoid, avoidByte);
+      return generateRandomBuffer(length, avoid, avoidByte, ThreadLocalRandom.current());
+    }
+
+    /**
+     * Creates a Buffer containing random bytes, taken from the given Random
+     * @param length the size of the Buffer to create
+     * @param avoid if true, the resulting Buffer will not contain avoidByte
+     * @param avoidByte A byte that is not to be included in the resulting array
+     * @param random The source of the bytes
+     * @return a Buffer of random bytes
+     */
+    public static Buffer generateRandomBuffer(int length, boolean avoid, byte avoidByte, Random random) {
+      byte[] line = generateRandomByteArray(length, avoid, avoidByte, random);
       return new Buffer(line);
     }
 
@@ -80,15 +111,23 @@ public class TestUtils {
      * @return a String of random unicode characters
      */
     public static String randomUnicodeString(int length) {
-      StringBuilder builder = new StringBuilder(length);
+      return randomUnicodeString(length, ThreadLocalRandom.current());
+    }
+
+    /**
+     * Creates a String containing random unicode characters, taken from the given Random
+     * @param length The length of the string to create
+     * @param random The source of the characters
+     * @return a String of random unicode characters
+     */
+    public static String randomUnicodeString(int length, Random random) {
+      char[] chars = new char[length];
       for (int i = 0; i < length; i++) {
-        char c;
-        do {
-          c = (char) (0xFFFF * Math.random());
-        } while ((c >= 0xFFFE && c <= 0xFFFF) || (c >= 0xD800 && c <= 0xDFFF)); //Illegal chars
-        builder.append(c);
+        // Pick from the legal chars only, skipping over the surrogates and leaving out 0xFFFE and 0xFFFF
+        int c = random.nextInt(0xFFFE - 0x800);
+        chars[i] = (char) (c < 0xD800 ? c : c + 0x800);
       }
-      return builder.toString();
+      return new String(chars);
     }
 
     /**
@@ -97,12 +136,21 @@ public class TestUtils {
      * @return a String of random ascii alpha characters
      */
     public static String randomAlphaString(int length) {
-      StringBuilder builder = new StringBuilder(length);
+      return randomAlphaString(length, ThreadLocalRandom.current());
+    }
+
+    /**
+     * Creates a random string of ascii alpha characters, taken from the given Random
+     * @param length the length of the string to create
+     * @param random The source of the characters
+     * @return a String of random ascii alpha characters
+     */
+    public static String randomAlphaString(int length, Random random) {
+      char[] chars = new char[length];
       for (int i = 0; i < length; i++) {
-        char c = (char) (65 + 25 * Math.random());
-        builder.append(c);
+        chars[i] = (char) ('A' + random.nextInt(26));
       }
-      return builder.toString();
+      return new String(chars);
     }
 
     /**
@@ -112,11 +160,7 @@ public class TestUtils {
      * @return true if the Buffers are equal
      */
     public static boolean buffersEqual(Buffer b1, Buffer b2) {
-      if (b1.length() != b2.length()) return false;
-      for (int i = 0; i < b1.length(); i++) {
-        if (b1.getByte(i) != b2.getByte(i)) return false;
-      }
-      return true;
+      return b1.length() == b2.length() && firstMismatch(b1, b2) == -1;
     }
 
     /**
@@ -126,11 +170,57 @@ public class TestUtils {
      * @return true if the byte arrays are equal
      */
     public static boolean byteArraysEqual(byte[] b1, byte[] b2) {
-      if (b1.length != b2.length) return false;
-      for (int i = 0; i < b1.length; i++) {
-        if (b1[i] != b2[i]) return false;
+      return Arrays.equals(b1, b2);
+    }
+
+    /**
+     * Find the first position at which two Buffers differ, comparing eight bytes at a time
+     * @param b1 The first buffer to compare
+     * @param b2 The second buffer to compare
+     * @return the offset of the first differing byte, the length of the shorter Buffer if it is a prefix of the
+     * other, or -1 if the Buffers are equal
+     */
+    public static int firstMismatch(Buffer b1, Buffer b2) {
+      ByteBuf buf1 = b1.getByteBuf();
+      ByteBuf buf2 = b2.getByteBuf();
+      int length = Math.min(b1.length(), b2.length());
+      int i = 0;
+      while (i + 8 <= length && buf1.getLong(i) == buf2.getLong(i)) {
+        i += 8;
+      }
+      while (i < length && buf1.getByte(i) == buf2.getByte(i)) {
+        i++;
+      }
+      return i == length && b1.length() == b2.length() ? -1 : i;
+    }
+
+    /**
+     * Find the first position at which two byte arrays differ, comparing eight bytes at a time
+     * @param b1 The first byte array to compare
+     * @param b2 The second byte array to compare
+     * @return the offset of the first differing byte, the length of the shorter array if it is a prefix of the other,
+     * or -1 if the arrays are equal
+     */
+    public static int firstMismatch(byte[] b1, byte[] b2) {
+      int length = Math.min(b1.length, b2.length);
+      int i = mismatch(b1, b2, length);
+      return i == length && b1.length == b2.length ? -1 : i;
+    }
+
+    /**
+     * @return the offset of the first difference in the first length bytes of the arrays, or length if there is none
+     */
+    static int mismatch(byte[] b1, byte[] b2, int length) {
+      ByteBuffer buf1 = ByteBuffer.wrap(b1);
+      ByteBuffer buf2 = ByteBuffer.wrap(b2);
+      int i = 0;
+      while (i + 8 <= length && buf1.getLong(i) == buf2.getLong(i)) {
+        i += 8;
+      }
+      while (i < length && b1[i] == b2[i]) {
+        i++;
       }
-      return true;
+      return i;
     }
 
     private TestUtils() {
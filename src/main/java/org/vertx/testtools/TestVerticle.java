@@ -18,12 +18,22 @@ package org.vertx.testtools;
  */
 
 import org.junit.runner.RunWith;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonObject;
 import org.vertx.java.core.logging.Logger;
 import org.vertx.java.core.logging.impl.LoggerFactory;
 import org.vertx.java.platform.Verticle;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 @RunWith(JavaClassRunner.class)
 public abstract class TestVerticle extends Verticle {
@@ -36,23 +46,74 @@ public abstract class TestVerticle extends Verticle {
   }
 
   protected void initialize() {
-    VertxAssert.initialize(vertx);
+    JsonObject config = container.config();
+    VertxAssert.initialize(vertx, config.getString("handlerAddress"), config.getString("testId"));
   }
 
   protected void startTests() {
-    String methodName = container.config().getString("methodName");
+    final JsonObject config = container.config();
+    final String runAddress = config.getString("runAddress");
+    if (runAddress != null) {
+      // We're deployed once for the whole class so the runner tells us which test to run next
+      vertx.eventBus().registerHandler(runAddress, new Handler<Message<JsonObject>>() {
+        @Override
+        public void handle(Message<JsonObject> msg) {
+          JsonObject run = msg.body();
+          VertxAssert.initialize(vertx, config.getString("handlerAddress"), run.getString("testId"));
+          runTest(run.getString("methodName"));
+        }
+      }, new Handler<AsyncResult<Void>>() {
+        @Override
+        public void handle(AsyncResult<Void> ar) {
+          // The runner waits for this before sending the first test, as we may be called after start() has returned
+          vertx.eventBus().send(config.getString("handlerAddress"),
+              new JsonObject().putString("type", "ready").putString("runAddress", runAddress));
+        }
+      });
+    } else {
+      runTest(config.getString("methodName"));
+    }
+  }
+
+  protected void runTest(String methodName) {
     try {
-      Method m = getClass().getDeclaredMethod(methodName);
-      m.invoke(this);
-    } catch (InvocationTargetException e) {
-      InvocationTargetException it = (InvocationTargetException)e;
-      Throwable targetEx = it.getTargetException();
-      VertxAssert.handleThrowable(targetEx);
+      MethodHandle handle = testMethods.get(getClass()).get(methodName);
+      if (handle == null) {
+        throw new NoSuchMethodException(getClass().getName() + "." + methodName + "()");
+      }
+      handle.invokeExact(this);
     } catch (Throwable t) {
-      // Problem with invoking
       VertxAssert.handleThrowable(t);
     }
   }
 
+  /*
+  The test methods of each class, looked up once and then reused for every test run on that class.
+  Methods inherited from superclasses are included so tests can be declared in abstract base test verticles.
+   */
+  private static final ClassValue<Map<String, MethodHandle>> testMethods = new ClassValue<Map<String, MethodHandle>>() {
+    @Override
+    protected Map<String, MethodHandle> computeValue(Class<?> clazz) {
+      Map<String, MethodHandle> handles = new HashMap<>();
+      MethodHandles.Lookup lookup = MethodHandles.lookup();
+      MethodType type = MethodType.methodType(void.class, TestVerticle.class);
+      for (Class<?> c = clazz; c != null && c != TestVerticle.class; c = c.getSuperclass()) {
+        for (Method m: c.getDeclaredMethods()) {
+          if (m.getParameterTypes().length != 0 || Modifier.isStatic(m.getModifiers()) || m.isBridge() ||
+              m.isSynthetic() || handles.containsKey(m.getName())) {
+            // Subclass methods take precedence over the ones they override
+            continue;
+          }
+          try {
+            m.setAccessible(true);
+            handles.put(m.getName(), lookup.unreflect(m).asType(type));
+          } catch (IllegalAccessException | SecurityException e) {
+            log.warn("Cannot access test method " + m, e);
+          }
+        }
+      }
+      return Collections.unmodifiableMap(handles);
+    }
+  };
 
 }
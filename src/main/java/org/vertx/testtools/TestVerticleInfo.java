@@ -27,4 +27,7 @@ public @interface TestVerticleInfo {
   String filenameFilter() default "";
   String funcRegex() default "";
   String includes() default "";
+  int concurrency() default 0;
+  boolean deployPerClass() default false;
+  long timeout() default 0;
 }
@@ -0,0 +1,238 @@
+package org.vertx.testtools;
+/*
+ * Copyright 2013 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+import org.junit.ComparisonFailure;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+import java.lang.reflect.Constructor;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Encodes a Throwable as a JsonObject so it can be sent over the event bus, and rebuilds it on the other side.
+ *
+ * Only the class name, message, stack frames, cause chain and suppressed exceptions are sent, so unlike Java
+ * serialization this works whatever the Throwable holds. When the class can't be loaded or instantiated on the
+ * receiving side an AssertionError or Exception standing in for it is created instead, which reports the original
+ * class name.
+ *
+ * Causes and suppressed exceptions nested more than {@link #MAX_DEPTH} deep are left out. The Throwable they would
+ * have been attached to is rebuilt with a suppressed exception saying so.
+ */
+public final class ThrowableCodec {
+
+  /**
+   * How deep causes and suppressed exceptions are followed from the Throwable being encoded
+   */
+  static final int MAX_DEPTH = 32;
+
+  static final String TRUNCATED_MESSAGE = "Causes or suppressed exceptions nested more than " + MAX_DEPTH +
+      " deep were not sent";
+
+  /**
+   * Encode a Throwable
+   * @param t the Throwable
+   * @return the encoded Throwable
+   */
+  public static JsonObject encode(Throwable t) {
+    return encode(t, Collections.newSetFromMap(new IdentityHashMap<Throwable, Boolean>()), 1);
+  }
+
+  private static JsonObject encode(Throwable t, Set<Throwable> seen, int depth) {
+    seen.add(t);
+    JsonObject json = new JsonObject().putString("class", t.getClass().getName())
+        .putBoolean("assertion", t instanceof AssertionError);
+    if (t instanceof ComparisonFailure) {
+      ComparisonFailure cf = (ComparisonFailure)t;
+      json.putString("expected", cf.getExpected()).putString("actual", cf.getActual())
+          .putString("message", comparisonMessage(cf));
+    } else {
+      json.putString("message", t.getMessage());
+    }
+    JsonArray stack = new JsonArray();
+    for (StackTraceElement elem: t.getStackTrace()) {
+      stack.addArray(new JsonArray().addString(elem.getClassName()).addString(elem.getMethodName())
+          .addString(elem.getFileName()).addNumber(elem.getLineNumber()));
+    }
+    json.putArray("stack", stack);
+    // Anything already seen is part of a cycle or shared between chains, and is sent once
+    boolean truncated = false;
+    Throwable cause = t.getCause();
+    if (cause != null && !seen.contains(cause)) {
+      if (depth < MAX_DEPTH) {
+        json.putObject("cause", encode(cause, seen, depth + 1));
+      } else {
+        truncated = true;
+      }
+    }
+    Throwable[] suppressed = t.getSuppressed();
+    if (suppressed.length > 0) {
+      JsonArray arr = new JsonArray();
+      for (Throwable s: suppressed) {
+        if (!seen.contains(s)) {
+          if (depth < MAX_DEPTH) {
+            arr.addObject(encode(s, seen, depth + 1));
+          } else {
+            truncated = true;
+          }
+        }
+      }
+      json.putArray("suppressed", arr);
+    }
+    if (truncated) {
+      json.putBoolean("truncated", true);
+    }
+    return json;
+  }
+
+  /**
+   * Rebuild a Throwable encoded with {@link #encode(Throwable)}
+   * @param json the encoded Throwable
+   * @return the Throwable
+   */
+  public static Throwable decode(JsonObject json) {
+    String className = json.getString("class");
+    String message = json.getString("message");
+    boolean assertion = Boolean.TRUE.equals(json.getBoolean("assertion"));
+    Throwable t;
+    if (json.getField("expected") != null || json.getField("actual") != null) {
+      t = new ComparisonFailure(message == null ? "" : message, json.getString("expected"), json.getString("actual"));
+    } else {
+      t = instantiate(className, message);
+      if (t == null) {
+        t = assertion ? new RemoteAssertionError(className, message) : new RemoteException(className, message);
+      }
+    }
+    JsonArray stack = json.getArray("stack");
+    if (stack != null) {
+      StackTraceElement[] elems = new StackTraceElement[stack.size()];
+      for (int i = 0; i < elems.length; i++) {
+        JsonArray frame = stack.get(i);
+        elems[i] = new StackTraceElement((String)frame.get(0), (String)frame.get(1), (String)frame.get(2),
+            ((Number)frame.get(3)).intValue());
+      }
+      t.setStackTrace(elems);
+    }
+    JsonObject cause = json.getObject("cause");
+    if (cause != null) {
+      try {
+        t.initCause(decode(cause));
+      } catch (IllegalStateException | IllegalArgumentException e) {
+        // The constructor already set a cause
+      }
+    }
+    JsonArray suppressed = json.getArray("suppressed");
+    if (suppressed != null) {
+      for (Object s: suppressed) {
+        t.addSuppressed(decode((JsonObject)s));
+      }
+    }
+    if (Boolean.TRUE.equals(json.getBoolean("truncated"))) {
+      Exception marker = new Exception(TRUNCATED_MESSAGE);
+      marker.setStackTrace(new StackTraceElement[0]);
+      t.addSuppressed(marker);
+    }
+    return t;
+  }
+
+  private static Throwable instantiate(String className, String message) {
+    try {
+      Class<?> clazz = Class.forName(className, false, ThrowableCodec.class.getClassLoader());
+      if (!Throwable.class.isAssignableFrom(clazz)) {
+        return null;
+      }
+      if (AssertionError.class.equals(clazz)) {
+        // AssertionError(String) is private, the public constructor takes an Object
+        return message == null ? new AssertionError() : new AssertionError(message);
+      }
+      if (message == null) {
+        try {
+          return (Throwable)clazz.getConstructor().newInstance();
+        } catch (NoSuchMethodException e) {
+          // Fall through to the message constructor
+        }
+      }
+      Constructor<?> ctor = clazz.getConstructor(String.class);
+      return (Throwable)ctor.newInstance(message);
+    } catch (Exception | LinkageError e) {
+      return null;
+    }
+  }
+
+  private static String comparisonMessage(ComparisonFailure cf) {
+    // getMessage() appends the expected and actual values to the message the failure was created with, strip them
+    // again so we don't end up with them twice when the failure is rebuilt
+    String message = cf.getMessage();
+    String suffix = new ComparisonFailure("", cf.getExpected(), cf.getActual()).getMessage();
+    if (message != null && message.endsWith(suffix)) {
+      return message.substring(0, message.length() - suffix.length()).trim();
+    }
+    return message;
+  }
+
+  /**
+   * Stands in for an AssertionError whose class isn't available to the runner
+   */
+  private static final class RemoteAssertionError extends AssertionError {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String className;
+    private final String message;
+
+    RemoteAssertionError(String className, String message) {
+      this.className = className;
+      this.message = message;
+    }
+
+    public String getMessage() {
+      // AssertionError(Object) would turn a null message into "null"
+      return message;
+    }
+
+    public String toString() {
+      String message = getLocalizedMessage();
+      return message == null ? className : className + ": " + message;
+    }
+  }
+
+  /**
+   * Stands in for a Throwable whose class isn't available to the runner
+   */
+  private static final class RemoteException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String className;
+
+    RemoteException(String className, String message) {
+      super(message);
+      this.className = className;
+    }
+
+    public String toString() {
+      String message = getLocalizedMessage();
+      return message == null ? className : className + ": " + message;
+    }
+  }
+
+  private ThrowableCodec() {
+  }
+}
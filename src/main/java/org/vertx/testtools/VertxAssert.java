@@ -21,11 +21,12 @@ import org.hamcrest.Matcher;
 import org.junit.Assert;
 import org.junit.internal.ArrayComparisonFailure;
 import org.vertx.java.core.Vertx;
+import org.vertx.java.core.impl.VertxInternal;
 import org.vertx.java.core.json.JsonObject;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.ObjectOutputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 /**
  * This class delegates to the JUnit Assert class but catches any AssertionError instances that are thrown and
@@ -34,34 +35,49 @@ import java.io.ObjectOutputStream;
 public class VertxAssert {
 
   private static Vertx jVertx;
+  // Where to report results, keyed by the context of the test verticle that registered them
+  private static final Map<Object, JsonObject> reporters = Collections.synchronizedMap(new WeakHashMap<Object, JsonObject>());
+
   public static void initialize(Vertx vertx) {
     VertxAssert.jVertx = vertx;
   }
 
+  /**
+   * Initialise VertxAssert so that results raised on the current context are sent to the given address, tagged with
+   * the id of the test. This lets several test verticles report their results independently.
+   */
+  public static void initialize(Vertx vertx, String handlerAddress, String testId) {
+    initialize(vertx);
+    if (handlerAddress != null) {
+      reporters.put(currentContext(), new JsonObject().putString("address", handlerAddress).putString("testId", testId));
+    }
+  }
+
+  private static Object currentContext() {
+    return jVertx instanceof VertxInternal ? ((VertxInternal)jVertx).getContext() : null;
+  }
+
+  private static void report(JsonObject result) {
+    // Lets the runner tell how long the result spent on the event bus
+    result.putNumber("sent", System.nanoTime());
+    JsonObject reporter = reporters.get(currentContext());
+    if (reporter == null) {
+      jVertx.eventBus().send(JavaClassRunner.TESTRUNNER_HANDLER_ADDRESS, result);
+    } else {
+      jVertx.eventBus().send(reporter.getString("address"), result.putString("testId", reporter.getString("testId")));
+    }
+  }
+
   public static void handleThrowable(Throwable t) {
     if (jVertx == null) {
       throw new IllegalStateException("Please initialise VertxAssert before use");
     }
-    // Serialize the error
-    JsonObject failure = new JsonObject().putString("type", "failure");
-    byte[] bytes;
-    try {
-      ByteArrayOutputStream baos = new ByteArrayOutputStream();
-      ObjectOutputStream oos = new ObjectOutputStream(baos);
-      oos.writeObject(t);
-      oos.flush();
-      bytes = baos.toByteArray();
-      failure.putBinary("failure", bytes);
-    } catch (IOException ex) {
-      throw new IllegalStateException("Failed to serialise error: " + ex.getMessage(), ex);
-    }
-    finally {
-      jVertx.eventBus().send(JavaClassRunner.TESTRUNNER_HANDLER_ADDRESS, failure);
-    }
+    JsonObject failure = new JsonObject().putString("type", "failure").putObject("failure", ThrowableCodec.encode(t));
+    report(failure);
   }
 
   public static void testComplete() {
-    jVertx.eventBus().send(JavaClassRunner.TESTRUNNER_HANDLER_ADDRESS, new JsonObject().putString("type", "done"));
+    report(new JsonObject().putString("type", "done"));
   }
 
   public static void assertTrue(String message, boolean condition) {
@@ -0,0 +1,38 @@
+package org.vertx.testtools;
+
+import org.junit.Test;
+import org.vertx.java.core.Handler;
+
+/**
+ * A test verticle deployed once for the class which only starts its tests some time after start() has returned, as
+ * one that deploys the module under test first would. The first test must still be run rather than lost.
+ */
+@TestVerticleInfo(deployPerClass = true, timeout = 30)
+public class DeployPerClassTest extends TestVerticle {
+
+    private boolean started;
+
+    @Override
+    public void start() {
+        initialize();
+        vertx.setTimer(500, new Handler<Long>() {
+            @Override
+            public void handle(Long timerID) {
+                started = true;
+                startTests();
+            }
+        });
+    }
+
+    @Test
+    public void testFirst() {
+        VertxAssert.assertTrue("Tests started before startTests() was called", started);
+        VertxAssert.testComplete();
+    }
+
+    @Test
+    public void testSecond() {
+        VertxAssert.assertTrue("Tests started before startTests() was called", started);
+        VertxAssert.testComplete();
+    }
+}
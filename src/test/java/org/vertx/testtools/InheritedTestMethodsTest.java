@@ -0,0 +1,15 @@
+package org.vertx.testtools;
+
+import org.junit.Test;
+
+/**
+ * Test methods inherited from a base test verticle are run, and overridden ones run the version of the subclass
+ */
+public class InheritedTestMethodsTest extends InheritedTestVerticle {
+
+    @Override
+    @Test
+    public void testOverridden() {
+        VertxAssert.testComplete();
+    }
+}
@@ -0,0 +1,19 @@
+package org.vertx.testtools;
+
+import org.junit.Test;
+
+/**
+ * A base test verticle declaring tests for its subclasses to run, see InheritedTestMethodsTest
+ */
+public abstract class InheritedTestVerticle extends TestVerticle {
+
+    @Test
+    public void testInherited() {
+        VertxAssert.testComplete();
+    }
+
+    @Test
+    public void testOverridden() {
+        VertxAssert.fail("The version of the subclass should have been run");
+    }
+}
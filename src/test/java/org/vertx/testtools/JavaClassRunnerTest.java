@@ -0,0 +1,210 @@
+package org.vertx.testtools;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.ParallelComputer;
+import org.junit.runner.Description;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+import org.vertx.java.core.Handler;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests for JavaClassRunner, running the nested test verticles as test classes of their own
+ */
+public class JavaClassRunnerTest {
+
+    @Test
+    public void testConcurrentResultsReachTheirTests() {
+        Result result = JUnitCore.runClasses(ConcurrentFixture.class);
+        Assert.assertEquals(4, result.getRunCount());
+        Assert.assertEquals(2, result.getFailureCount());
+        for (Failure failure: result.getFailures()) {
+            // Each failing test fails with its own name, whichever test finishes first
+            Assert.assertEquals(failure.getDescription().getMethodName(), failure.getMessage());
+        }
+    }
+
+    @Test
+    public void testUnattributedResultFailsAllPendingTests() {
+        Result result = JUnitCore.runClasses(UnattributedFixture.class);
+        Assert.assertEquals(2, result.getRunCount());
+        Assert.assertEquals(2, result.getFailureCount());
+        for (Failure failure: result.getFailures()) {
+            Assert.assertTrue(failure.getMessage(), failure.getMessage().contains("could not be attributed"));
+        }
+    }
+
+    @Test
+    public void testTimeout() {
+        Result result = JUnitCore.runClasses(TimeoutFixture.class);
+        Assert.assertEquals(1, result.getFailureCount());
+        Assert.assertEquals("Timed out after 1000 ms waiting for test to complete",
+            result.getFailures().get(0).getMessage());
+    }
+
+    @Test
+    public void testInterrupt() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicReference<Result> result = new AtomicReference<>();
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                JUnitCore core = new JUnitCore();
+                core.addListener(new RunListener() {
+                    @Override
+                    public void testStarted(Description description) {
+                        started.countDown();
+                    }
+                });
+                result.set(core.run(InterruptFixture.class));
+            }
+        };
+        thread.start();
+        Assert.assertTrue("Test didn't start", started.await(30, TimeUnit.SECONDS));
+        thread.interrupt();
+        // Far less than the timeout of the test
+        thread.join(10000);
+        Assert.assertFalse("Run wasn't stopped by the interrupt", thread.isAlive());
+        Assert.assertEquals(1, result.get().getFailureCount());
+        Assert.assertTrue(result.get().getFailures().get(0).getException() instanceof InterruptedException);
+    }
+
+    @Test
+    public void testParallelClassesKeepTheirResults() {
+        // Both classes report to the shared handler address, which each must only receive on its own Vert.x
+        Result result = JUnitCore.runClasses(ParallelComputer.classes(), SlowUnattributedFixture.class,
+            FailingUnattributedFixture.class);
+        Assert.assertEquals(2, result.getRunCount());
+        Assert.assertEquals(1, result.getFailureCount());
+        Failure failure = result.getFailures().get(0);
+        Assert.assertEquals(FailingUnattributedFixture.class.getName(), failure.getDescription().getClassName());
+        Assert.assertEquals("Failed from its own thread", failure.getMessage());
+    }
+
+    @TestVerticleInfo(concurrency = 4)
+    public static class ConcurrentFixture extends TestVerticle {
+
+        @Test
+        public void testFirst() {
+            completeAfter(400);
+        }
+
+        @Test
+        public void testSecond() {
+            failAfter(300, "testSecond");
+        }
+
+        @Test
+        public void testThird() {
+            completeAfter(200);
+        }
+
+        @Test
+        public void testFourth() {
+            failAfter(100, "testFourth");
+        }
+
+        private void completeAfter(long delay) {
+            vertx.setTimer(delay, new Handler<Long>() {
+                @Override
+                public void handle(Long timerID) {
+                    VertxAssert.testComplete();
+                }
+            });
+        }
+
+        private void failAfter(long delay, final String message) {
+            vertx.setTimer(delay, new Handler<Long>() {
+                @Override
+                public void handle(Long timerID) {
+                    VertxAssert.fail(message);
+                }
+            });
+        }
+    }
+
+    /**
+     * One test reports from a thread of its own, so the result has no test id, while the other is still running
+     */
+    @TestVerticleInfo(concurrency = 2, timeout = 10)
+    public static class UnattributedFixture extends TestVerticle {
+
+        @Test
+        public void testReportsFromOwnThread() {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(1000);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    VertxAssert.testComplete();
+                }
+            }.start();
+        }
+
+        @Test
+        public void testStillRunning() {
+            // Never completes, it's still pending when the other test reports
+        }
+    }
+
+    public static class TimeoutFixture extends TestVerticle {
+
+        @Test
+        @TestVerticleInfo(timeout = 1)
+        public void testNeverCompletes() {
+        }
+    }
+
+    @TestVerticleInfo(timeout = 60)
+    public static class InterruptFixture extends TestVerticle {
+
+        @Test
+        public void testNeverCompletes() {
+        }
+    }
+
+    public static class SlowUnattributedFixture extends TestVerticle {
+
+        @Test
+        public void testCompletesFromOwnThread() {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(1000);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    VertxAssert.testComplete();
+                }
+            }.start();
+        }
+    }
+
+    public static class FailingUnattributedFixture extends TestVerticle {
+
+        @Test
+        public void testFailsFromOwnThread() {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    VertxAssert.fail("Failed from its own thread");
+                }
+            }.start();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.vertx.testtools;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.platform.PlatformManager;
+import org.vertx.java.platform.Verticle;
+
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests for PlatformManagerPool
+ */
+public class PlatformManagerPoolTest {
+
+    @Test
+    public void testOneBorrowerAtATime() {
+        PlatformManager first = PlatformManagerPool.acquire();
+        PlatformManager second = PlatformManagerPool.acquire();
+        try {
+            Assert.assertNotSame(first, second);
+        } finally {
+            PlatformManagerPool.release(first);
+            PlatformManagerPool.release(second);
+        }
+        // A released manager is lent out again rather than a new one created
+        PlatformManager again = PlatformManagerPool.acquire();
+        try {
+            Assert.assertTrue(again == first || again == second);
+        } finally {
+            PlatformManagerPool.release(again);
+        }
+    }
+
+    @Test
+    public void testLeftoversUndeployedOnRelease() throws InterruptedException {
+        PlatformManager mgr = PlatformManagerPool.acquire();
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<AsyncResult<String>> result = new AtomicReference<>();
+        URL classpath = Leftover.class.getProtectionDomain().getCodeSource().getLocation();
+        mgr.deployVerticle(Leftover.class.getName(), new JsonObject(), new URL[] {classpath}, 1, null,
+            new Handler<AsyncResult<String>>() {
+                @Override
+                public void handle(AsyncResult<String> ar) {
+                    result.set(ar);
+                    latch.countDown();
+                }
+            });
+        Assert.assertTrue("Deployment timed out", latch.await(30, TimeUnit.SECONDS));
+        Assert.assertTrue("Deployment failed", result.get().succeeded());
+        Assert.assertEquals(1, mgr.listInstances().size());
+        PlatformManagerPool.release(mgr);
+        // Gone by the time release returns, before anyone else can borrow the manager
+        Assert.assertTrue(mgr.listInstances().isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReleaseTwice() {
+        PlatformManager mgr = PlatformManagerPool.acquire();
+        PlatformManagerPool.release(mgr);
+        PlatformManagerPool.release(mgr);
+    }
+
+    /**
+     * A verticle a test class left behind
+     */
+    public static class Leftover extends Verticle {
+    }
+}
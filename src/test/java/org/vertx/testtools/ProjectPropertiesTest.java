@@ -0,0 +1,85 @@
+package org.vertx.testtools;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+
+/**
+ * Tests for ProjectProperties
+ */
+public class ProjectPropertiesTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("project").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        for (File file: dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testGradleProperties() throws IOException {
+        write("gradle.properties", "modowner=io.vertx\nmodname=foo\nversion=1.0\n");
+        ProjectProperties props = ProjectProperties.read(dir);
+        Assert.assertEquals("io.vertx~foo~1.0", props.getModuleName());
+        Assert.assertEquals("foo", props.getProperties().get("vertx.modname"));
+        Assert.assertEquals("build/mods", props.getModsDir());
+    }
+
+    @Test
+    public void testPom() throws IOException {
+        write("pom.xml", "<project>\n" +
+            "  <modelVersion>4.0.0</modelVersion>\n" +
+            "  <dependencies><dependency><groupId>junit</groupId><artifactId>junit</artifactId>" +
+            "<version>4.11</version></dependency></dependencies>\n" +
+            "  <groupId>io.vertx</groupId>\n" +
+            "  <artifactId>foo</artifactId>\n" +
+            "  <version>1.0</version>\n" +
+            "</project>\n");
+        ProjectProperties props = ProjectProperties.read(dir);
+        Assert.assertEquals("io.vertx~foo~1.0", props.getModuleName());
+        Assert.assertEquals("target/mods", props.getModsDir());
+    }
+
+    @Test
+    public void testPomInheritsFromParent() throws IOException {
+        write("pom.xml", "<?xml version=\"1.0\"?>\n" +
+            "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n" +
+            "  <parent>\n" +
+            "    <groupId>io.vertx</groupId>\n" +
+            "    <artifactId>parent</artifactId>\n" +
+            "    <version>2.0</version>\n" +
+            "  </parent>\n" +
+            "  <artifactId>foo</artifactId>\n" +
+            "</project>\n");
+        Assert.assertEquals("io.vertx~foo~2.0", ProjectProperties.read(dir).getModuleName());
+    }
+
+    @Test
+    public void testNoProject() {
+        ProjectProperties props = ProjectProperties.read(dir);
+        Assert.assertNull(props.getModuleName());
+        Assert.assertNull(props.getModsDir());
+        Assert.assertTrue(props.getProperties().isEmpty());
+    }
+
+    private void write(String name, String content) throws IOException {
+        try (Writer writer = new FileWriter(new File(dir, name))) {
+            writer.write(content);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.vertx.testtools;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Tests for ScriptIndex
+ */
+public class ScriptIndexTest {
+
+    private static final Pattern FUNC_PATTERN = Pattern.compile("function[\\s]+(test[^\\s(]+)");
+
+    private File file;
+    private File script;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("scriptindex", ".properties");
+        file.delete();
+        script = File.createTempFile("script", ".js");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        new File(file.getPath() + ".lock").delete();
+        script.delete();
+    }
+
+    @Test
+    public void testFindsFunctions() throws IOException {
+        write("function testFoo() {\n}\nfunction helper() {\n}\nfunction testBar() {\n}\n");
+        ScriptIndex index = new ScriptIndex(file);
+        Assert.assertEquals(Arrays.asList("testFoo", "testBar"), index.functions(script, FUNC_PATTERN));
+    }
+
+    @Test
+    public void testUnchangedScriptNotRead() throws IOException {
+        write("function testFoo() {\n}\n");
+        ScriptIndex index = new ScriptIndex(file);
+        index.functions(script, FUNC_PATTERN);
+        index.save();
+        // Change the saved entry so we can tell it was used instead of the script
+        Map<String, String> entries = PropertiesFile.load(file);
+        Assert.assertEquals(1, entries.size());
+        Map.Entry<String, String> entry = entries.entrySet().iterator().next();
+        entry.setValue(entry.getValue().replace("testFoo", "testCached"));
+        PropertiesFile.store(file, entries, null);
+        ScriptIndex loaded = new ScriptIndex(file);
+        Assert.assertEquals(Arrays.asList("testCached"), loaded.functions(script, FUNC_PATTERN));
+    }
+
+    @Test
+    public void testChangedScriptRescanned() throws IOException {
+        write("function testFoo() {\n}\n");
+        ScriptIndex index = new ScriptIndex(file);
+        index.functions(script, FUNC_PATTERN);
+        index.save();
+        write("function testFoo() {\n}\nfunction testBar() {\n}\n");
+        ScriptIndex loaded = new ScriptIndex(file);
+        Assert.assertEquals(Arrays.asList("testFoo", "testBar"), loaded.functions(script, FUNC_PATTERN));
+    }
+
+    @Test
+    public void testDifferentPattern() throws IOException {
+        write("function testFoo() {\n}\nfunction checkBar() {\n}\n");
+        ScriptIndex index = new ScriptIndex(file);
+        index.functions(script, FUNC_PATTERN);
+        Assert.assertEquals(Arrays.asList("checkBar"),
+            index.functions(script, Pattern.compile("function[\\s]+(check[^\\s(]+)")));
+    }
+
+    private void write(String content) throws IOException {
+        try (Writer writer = new FileWriter(script)) {
+            writer.write(content);
+        }
+    }
+}
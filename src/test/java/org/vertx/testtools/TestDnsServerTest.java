@@ -0,0 +1,265 @@
+package org.vertx.testtools;
+
+import org.apache.directory.server.dns.messages.*;
+import org.apache.directory.server.dns.store.DnsAttribute;
+import org.apache.directory.server.dns.store.RecordStore;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tests for TestDnsServer, querying it over UDP and TCP as a resolver would
+ */
+public class TestDnsServerTest {
+
+    // Enough A records for the answer to be larger than a UDP response without EDNS
+    private static final int RECORDS = 64;
+    private static final int A_TYPE = 1;
+    private static final int AAAA_TYPE = 28;
+    private static final int OPT_TYPE = 41;
+
+    private TestDnsServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        TestDnsZone.Builder zone = TestDnsZone.builder();
+        for (int i = 0; i < RECORDS; i++) {
+            zone.a("large.vertx.io", "10.0.0." + (i + 1));
+        }
+        zone.a("small.vertx.io", "10.1.0.1");
+        server = TestDnsServer.testZone(zone.build()).port(0);
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void testUdpTruncated() throws IOException {
+        ByteBuffer response = sendUdp(server.getPort(), query("large.vertx.io", false));
+        Assert.assertTrue("Response should be truncated", (response.get(2) & 2) != 0);
+        Assert.assertTrue(response.limit() <= TestDnsServer.UDP_PAYLOAD_SIZE);
+        Assert.assertEquals(1, response.getShort(4));
+        // No answer, authority or additional records
+        Assert.assertEquals(0, response.getShort(6));
+        Assert.assertEquals(0, response.getShort(8));
+        Assert.assertEquals(0, response.getShort(10));
+    }
+
+    @Test
+    public void testTcp() throws IOException {
+        byte[] query = query("large.vertx.io", false);
+        try (Socket socket = new Socket(InetAddress.getByName("127.0.0.1"), server.getPort())) {
+            socket.setSoTimeout(5000);
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeShort(query.length);
+            out.write(query);
+            out.flush();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            byte[] bytes = new byte[in.readUnsignedShort()];
+            in.readFully(bytes);
+            ByteBuffer response = ByteBuffer.wrap(bytes);
+            Assert.assertEquals(query[0], bytes[0]);
+            Assert.assertEquals(query[1], bytes[1]);
+            Assert.assertTrue("Response shouldn't be truncated", (response.get(2) & 2) == 0);
+            Assert.assertTrue(bytes.length > TestDnsServer.UDP_PAYLOAD_SIZE);
+            Assert.assertEquals(RECORDS, response.getShort(6));
+            Assert.assertEquals(0, response.getShort(10));
+        }
+    }
+
+    @Test
+    public void testEdnsNotTruncated() throws IOException {
+        ByteBuffer response = sendUdp(server.getPort(), query("large.vertx.io", true));
+        Assert.assertTrue("Response shouldn't be truncated", (response.get(2) & 2) == 0);
+        Assert.assertTrue(response.limit() > TestDnsServer.UDP_PAYLOAD_SIZE);
+        Assert.assertEquals(RECORDS, response.getShort(6));
+        // Just the OPT record, which comes last: a root name, type, payload size, ttl and no data
+        Assert.assertEquals(1, response.getShort(10));
+        int opt = response.limit() - 11;
+        Assert.assertEquals(0, response.get(opt));
+        Assert.assertEquals(OPT_TYPE, response.getShort(opt + 1));
+        Assert.assertEquals(TestDnsServer.EDNS_PAYLOAD_SIZE, response.getShort(opt + 3));
+        Assert.assertEquals(0, response.getShort(opt + 9));
+    }
+
+    @Test
+    public void testServersOnAnyPort() throws IOException {
+        TestDnsServer other = TestDnsServer.testZone(TestDnsZone.builder().a("small.vertx.io", "10.2.0.1").build())
+            .port(0);
+        other.start();
+        try {
+            Assert.assertNotEquals(server.getPort(), other.getPort());
+            ByteBuffer response = sendUdp(server.getPort(), query("small.vertx.io", false));
+            Assert.assertEquals(1, response.getShort(6));
+            Assert.assertEquals(0x0A010001, response.getInt(response.limit() - 4));
+            response = sendUdp(other.getPort(), query("small.vertx.io", false));
+            Assert.assertEquals(1, response.getShort(6));
+            Assert.assertEquals(0x0A020001, response.getInt(response.limit() - 4));
+        } finally {
+            other.stop();
+        }
+    }
+
+    @Test
+    public void testCachedResponseIds() throws IOException {
+        ByteBuffer first = sendUdp(server.getPort(), query(0x0101, "small.vertx.io", A_TYPE, false));
+        ByteBuffer second = sendUdp(server.getPort(), query(0x0202, "small.vertx.io", A_TYPE, false));
+        Assert.assertEquals(0x0101, first.getShort(0));
+        Assert.assertEquals(0x0202, second.getShort(0));
+        // The same answer apart from the id
+        first.position(2);
+        second.position(2);
+        Assert.assertEquals(first, second);
+        Assert.assertEquals(1, second.getShort(6));
+    }
+
+    @Test
+    public void testNoData() throws IOException {
+        // small.vertx.io only has an A record
+        ByteBuffer response = sendUdp(server.getPort(), query(0x1234, "small.vertx.io", AAAA_TYPE, false));
+        Assert.assertEquals("Expected NOERROR", 0, response.get(3) & 0xF);
+        Assert.assertEquals(0, response.getShort(6));
+        response = sendUdp(server.getPort(), query(0x1234, "missing.vertx.io", A_TYPE, false));
+        Assert.assertEquals("Expected NXDOMAIN", 3, response.get(3) & 0xF);
+    }
+
+    @Test
+    public void testSections() throws IOException {
+        TestDnsServer mixed = TestDnsServer.testRecordStore(new RecordStore() {
+            @Override
+            public Set<ResourceRecord> getRecords(QuestionRecord question) {
+                Set<ResourceRecord> set = new LinkedHashSet<>();
+                set.add(record("mixed.vertx.io", RecordType.AAAA, DnsAttribute.IP_ADDRESS, "2001:db8::1"));
+                set.add(record("ns1.vertx.io", RecordType.A, DnsAttribute.IP_ADDRESS, "10.3.0.1"));
+                set.add(record("mixed.vertx.io", RecordType.AAAA, DnsAttribute.IP_ADDRESS, "::ffff:1.2.3.4"));
+                set.add(record("vertx.io", RecordType.NS, DnsAttribute.DOMAIN_NAME, "ns1.vertx.io"));
+                set.add(record("ns1.vertx.io", RecordType.AAAA, DnsAttribute.IP_ADDRESS, "::1"));
+                return set;
+            }
+        }).port(0);
+        mixed.start();
+        try {
+            ByteBuffer response = sendUdp(mixed.getPort(), query(0x1234, "mixed.vertx.io", AAAA_TYPE, false));
+            Assert.assertEquals(0, response.get(3) & 0xF);
+            Assert.assertEquals(1, response.getShort(4));
+            Assert.assertEquals(2, response.getShort(6));
+            Assert.assertEquals(1, response.getShort(8));
+            Assert.assertEquals(2, response.getShort(10));
+            List<byte[]> records = records(response);
+            Assert.assertEquals(5, records.size());
+            // The answers, the name server and then its addresses
+            Assert.assertArrayEquals(bytes(0x20, 0x01, 0x0d, 0xb8, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1), records.get(0));
+            Assert.assertArrayEquals(bytes(0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0xff, 0xff, 1, 2, 3, 4), records.get(1));
+            Assert.assertArrayEquals(bytes(3, 'n', 's', '1', 5, 'v', 'e', 'r', 't', 'x', 2, 'i', 'o', 0),
+                records.get(2));
+            Assert.assertArrayEquals(bytes(10, 3, 0, 1), records.get(3));
+            Assert.assertArrayEquals(bytes(0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1), records.get(4));
+        } finally {
+            mixed.stop();
+        }
+    }
+
+    private static ResourceRecord record(String name, RecordType type, String attribute, String value) {
+        ResourceRecordModifier rm = new ResourceRecordModifier();
+        rm.setDnsClass(RecordClass.IN);
+        rm.setDnsName(name);
+        rm.setDnsTtl(100);
+        rm.setDnsType(type);
+        rm.put(attribute, value);
+        return rm.getEntry();
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the data of each record of the response after its questions, in the order they were sent
+     */
+    private static List<byte[]> records(ByteBuffer response) {
+        int pos = 12;
+        for (int i = response.getShort(4); i > 0; i--) {
+            pos = skipDomainName(response, pos) + 4;
+        }
+        List<byte[]> records = new ArrayList<>();
+        int count = response.getShort(6) + response.getShort(8) + response.getShort(10);
+        for (int i = 0; i < count; i++) {
+            // Name, type, class, ttl, then the length of the data
+            pos = skipDomainName(response, pos) + 8;
+            int length = response.getShort(pos) & 0xFFFF;
+            records.add(Arrays.copyOfRange(response.array(), pos + 2, pos + 2 + length));
+            pos += 2 + length;
+        }
+        return records;
+    }
+
+    private static int skipDomainName(ByteBuffer response, int pos) {
+        while (true) {
+            int length = response.get(pos) & 0xFF;
+            if (length == 0) {
+                return pos + 1;
+            }
+            if ((length & 0xC0) == 0xC0) {
+                return pos + 2;
+            }
+            pos += 1 + length;
+        }
+    }
+
+    private ByteBuffer sendUdp(int port, byte[] query) throws IOException {
+        try (DatagramSocket socket = new DatagramSocket()) {
+            socket.setSoTimeout(5000);
+            socket.send(new DatagramPacket(query, query.length, InetAddress.getByName("127.0.0.1"), port));
+            DatagramPacket response = new DatagramPacket(new byte[65536], 65536);
+            socket.receive(response);
+            Assert.assertEquals(query[0], response.getData()[0]);
+            Assert.assertEquals(query[1], response.getData()[1]);
+            return ByteBuffer.wrap(Arrays.copyOf(response.getData(), response.getLength()));
+        }
+    }
+
+    private static byte[] query(String name, boolean edns) {
+        return query(0x1234, name, A_TYPE, edns);
+    }
+
+    private static byte[] query(int id, String name, int type, boolean edns) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // Header: id, recursion desired, one question and an additional record for EDNS
+        out.write(new byte[] {(byte) (id >> 8), (byte) id, 1, 0, 0, 1, 0, 0, 0, 0, 0, (byte) (edns ? 1 : 0)}, 0, 12);
+        for (String label: name.split("\\.")) {
+            out.write(label.length());
+            out.write(label.getBytes(), 0, label.length());
+        }
+        out.write(0);
+        // The type, class IN
+        out.write(new byte[] {(byte) (type >> 8), (byte) type, 0, 1}, 0, 4);
+        if (edns) {
+            // OPT record: root name, type, a payload size of 4096, ttl and no data
+            out.write(new byte[] {0, 0, OPT_TYPE, 0x10, 0, 0, 0, 0, 0, 0, 0}, 0, 11);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,145 @@
+package org.vertx.testtools;
+
+import org.apache.directory.server.dns.DnsException;
+import org.apache.directory.server.dns.messages.*;
+import org.apache.directory.server.dns.store.DnsAttribute;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Tests for TestDnsZone
+ */
+public class TestDnsZoneTest {
+
+    private final TestDnsZone zone = TestDnsZone.builder()
+        .a("a.vertx.io", "10.0.0.1")
+        .a("a.vertx.io", "10.0.0.2")
+        .mx("a.vertx.io", 10, "mail.vertx.io")
+        .cname("www.vertx.io", "a.vertx.io")
+        .cname("chain.vertx.io", "www.vertx.io")
+        .cname("loop1.vertx.io", "loop2.vertx.io")
+        .cname("loop2.vertx.io", "loop1.vertx.io")
+        .a("*.wild.vertx.io", "10.0.0.3")
+        .build();
+
+    @Test
+    public void testManyRecordsPerName() throws DnsException {
+        Set<ResourceRecord> records = zone.getRecords(question("A.vertx.io.", RecordType.A));
+        Assert.assertEquals(2, records.size());
+        Set<String> addresses = new HashSet<>();
+        for (ResourceRecord record: records) {
+            addresses.add(record.get(DnsAttribute.IP_ADDRESS));
+        }
+        Assert.assertTrue(addresses.contains("10.0.0.1"));
+        Assert.assertTrue(addresses.contains("10.0.0.2"));
+        Assert.assertEquals(1, zone.getRecords(question("a.vertx.io", RecordType.MX)).size());
+    }
+
+    @Test
+    public void testCname() throws DnsException {
+        // The CNAME and both A records of its target, in that order
+        Set<ResourceRecord> records = zone.getRecords(question("www.vertx.io", RecordType.A));
+        Assert.assertEquals(3, records.size());
+        Iterator<ResourceRecord> it = records.iterator();
+        Assert.assertEquals(RecordType.CNAME, it.next().getRecordType());
+        Assert.assertEquals("10.0.0.1", it.next().get(DnsAttribute.IP_ADDRESS));
+        Assert.assertEquals("10.0.0.2", it.next().get(DnsAttribute.IP_ADDRESS));
+        // Answered from the zone as built rather than put together for each query
+        Assert.assertSame(records, zone.getRecords(question("www.vertx.io", RecordType.A)));
+        // Only the CNAME when its target has nothing of the type asked for
+        Assert.assertEquals(1, zone.getRecords(question("www.vertx.io", RecordType.TXT)).size());
+    }
+
+    @Test
+    public void testCnameChain() throws DnsException {
+        // Both CNAMEs of the chain, then the A records at its end
+        Set<ResourceRecord> records = zone.getRecords(question("chain.vertx.io", RecordType.A));
+        Assert.assertEquals(4, records.size());
+        Iterator<ResourceRecord> it = records.iterator();
+        Assert.assertEquals("chain.vertx.io", it.next().getDomainName());
+        Assert.assertEquals("www.vertx.io", it.next().getDomainName());
+        Assert.assertEquals("10.0.0.1", it.next().get(DnsAttribute.IP_ADDRESS));
+        Assert.assertEquals("10.0.0.2", it.next().get(DnsAttribute.IP_ADDRESS));
+    }
+
+    @Test
+    public void testCnameLoop() throws DnsException {
+        // Nothing at the end of the loop, just the name's own CNAME
+        Set<ResourceRecord> records = zone.getRecords(question("loop1.vertx.io", RecordType.A));
+        Assert.assertEquals(1, records.size());
+        Assert.assertEquals(RecordType.CNAME, records.iterator().next().getRecordType());
+    }
+
+    @Test
+    public void testNoData() throws DnsException {
+        // The name exists without records of the type, which is no error
+        Assert.assertTrue(zone.getRecords(question("a.vertx.io", RecordType.AAAA)).isEmpty());
+    }
+
+    @Test
+    public void testRootWildcard() throws DnsException {
+        TestDnsZone any = TestDnsZone.builder().a("*", "10.0.0.4").build();
+        for (String name: new String[] {"vertx.io", "localhost", "a.b.c.vertx.io"}) {
+            Set<ResourceRecord> records = any.getRecords(question(name, RecordType.A));
+            Assert.assertEquals(1, records.size());
+            Assert.assertEquals(name, records.iterator().next().getDomainName());
+        }
+    }
+
+    @Test
+    public void testWildcard() throws DnsException {
+        Set<ResourceRecord> records = zone.getRecords(question("foo.bar.wild.vertx.io", RecordType.A));
+        Assert.assertEquals(1, records.size());
+        ResourceRecord record = records.iterator().next();
+        Assert.assertEquals("foo.bar.wild.vertx.io", record.getDomainName());
+        Assert.assertEquals("10.0.0.3", record.get(DnsAttribute.IP_ADDRESS));
+    }
+
+    @Test
+    public void testNonExisting() {
+        try {
+            zone.getRecords(question("missing.vertx.io", RecordType.A));
+            Assert.fail("Expected NXDOMAIN");
+        } catch (DnsException e) {
+            Assert.assertEquals(ResponseCode.NAME_ERROR, e.getResponseCode());
+        }
+    }
+
+    @Test
+    public void testIpv6Literals() {
+        byte[] mapped = new byte[16];
+        mapped[10] = mapped[11] = (byte) 0xff;
+        mapped[12] = 1;
+        mapped[13] = 2;
+        mapped[14] = 3;
+        mapped[15] = 4;
+        Assert.assertArrayEquals(mapped, TestDnsZone.ipv6Address("::ffff:1.2.3.4"));
+        byte[] loopback = new byte[16];
+        loopback[15] = 1;
+        Assert.assertArrayEquals(loopback, TestDnsZone.ipv6Address("::1"));
+        Assert.assertArrayEquals(loopback, TestDnsZone.ipv6Address("0:0:0:0:0:0:0:1"));
+        Assert.assertArrayEquals(new byte[16], TestDnsZone.ipv6Address("::"));
+        for (String literal: new String[] {"localhost", "1.2.3.4", "1::2::3", "12345::", "1:2:3:4:5:6:7:8:9",
+            "fe80::1%eth0", "::1.2.3.256"}) {
+            try {
+                TestDnsZone.ipv6Address(literal);
+                Assert.fail("Expected " + literal + " to be rejected");
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAaaaNotIpv6() {
+        TestDnsZone.builder().aaaa("v6.vertx.io", "localhost");
+    }
+
+    private static QuestionRecord question(String name, RecordType type) {
+        return new QuestionRecord(name, type, RecordClass.IN);
+    }
+}
@@ -0,0 +1,114 @@
+package org.vertx.testtools;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Tests for TestDurations
+ */
+public class TestDurationsTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("durations", ".properties");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        new File(file.getPath() + ".lock").delete();
+    }
+
+    @Test
+    public void testNotEnoughHistory() {
+        TestDurations durations = new TestDurations(file, 5);
+        Assert.assertEquals(300000, durations.timeout("Foo#bar", 300000));
+        for (int i = 0; i < TestDurations.MIN_SAMPLES - 1; i++) {
+            durations.record("Foo#bar", 10);
+        }
+        Assert.assertEquals(300000, durations.timeout("Foo#bar", 300000));
+    }
+
+    @Test
+    public void testMultipleOfPercentile() {
+        TestDurations durations = new TestDurations(file, 5);
+        for (int i = 1; i <= 20; i++) {
+            durations.record("Foo#bar", i * 100);
+        }
+        // p99 of 20 samples is the largest one
+        Assert.assertEquals(10000, durations.timeout("Foo#bar", 300000));
+        // Never more than the limit
+        Assert.assertEquals(8000, durations.timeout("Foo#bar", 8000));
+    }
+
+    @Test
+    public void testMinimumTimeout() {
+        TestDurations durations = new TestDurations(file, 5);
+        for (int i = 0; i < TestDurations.MIN_SAMPLES; i++) {
+            durations.record("Foo#bar", 1);
+        }
+        Assert.assertEquals(TestDurations.MIN_TIMEOUT, durations.timeout("Foo#bar", 300000));
+    }
+
+    @Test
+    public void testSaveAndLoad() {
+        TestDurations durations = new TestDurations(file, 5);
+        for (int i = 0; i < TestDurations.MAX_SAMPLES + 10; i++) {
+            durations.record("Foo#bar", 2000);
+        }
+        durations.save();
+        TestDurations other = new TestDurations(file, 5);
+        other.record("Foo#baz", 3000);
+        other.save();
+        TestDurations loaded = new TestDurations(file, 5);
+        Assert.assertEquals(10000, loaded.timeout("Foo#bar", 300000));
+        // Only one sample so far
+        Assert.assertEquals(300000, loaded.timeout("Foo#baz", 300000));
+    }
+
+    @Test
+    public void testConcurrentSaves() throws InterruptedException {
+        // Each as if in a JVM of its own, all loaded before any of them saved
+        final CountDownLatch go = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            final TestDurations durations = new TestDurations(file, 5);
+            for (int j = 0; j < TestDurations.MIN_SAMPLES; j++) {
+                durations.record("Foo#test" + i, 1);
+            }
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        go.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    durations.save();
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        go.countDown();
+        for (Thread thread: threads) {
+            thread.join();
+        }
+        // None of them overwrote what another saved
+        TestDurations loaded = new TestDurations(file, 5);
+        for (int i = 0; i < 8; i++) {
+            Assert.assertEquals(TestDurations.MIN_TIMEOUT, loaded.timeout("Foo#test" + i, 300000));
+        }
+    }
+}
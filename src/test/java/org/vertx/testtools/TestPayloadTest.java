@@ -0,0 +1,238 @@
+package org.vertx.testtools;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.VertxFactory;
+import org.vertx.java.core.buffer.Buffer;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for TestPayload
+ */
+public class TestPayloadTest {
+
+    private Vertx vertx;
+
+    @Before
+    public void setUp() {
+        vertx = VertxFactory.newVertx();
+    }
+
+    @After
+    public void tearDown() {
+        vertx.stop();
+    }
+
+    @Test
+    public void testSameBytesWhateverTheChunks() {
+        TestPayload payload = new TestPayload(42, 1000);
+        byte[] whole = new byte[1000];
+        payload.getBytes(0, whole, 0, 1000);
+        byte[] chunked = new byte[1000];
+        for (int offset = 0, size = 1; offset < 1000; offset += size, size = size * 2 + 1) {
+            size = Math.min(size, 1000 - offset);
+            payload.getBytes(offset, chunked, offset, size);
+        }
+        Assert.assertTrue("Chunks should match the whole payload", Arrays.equals(whole, chunked));
+        byte[] again = new byte[1000];
+        new TestPayload(42, 1000).getBytes(0, again, 0, 1000);
+        Assert.assertTrue("Same seed should give the same payload", Arrays.equals(whole, again));
+        new TestPayload(43, 1000).getBytes(0, again, 0, 1000);
+        Assert.assertTrue("Different seeds should give different payloads", !Arrays.equals(whole, again));
+    }
+
+    @Test
+    public void testVerifier() {
+        TestPayload payload = new TestPayload(42, 1000);
+        TestPayload.Verifier verifier = payload.verifier();
+        verifier.handle(chunk(payload, 0, 333));
+        verifier.handle(chunk(payload, 333, 667));
+        Assert.assertEquals(1000, verifier.received());
+        Assert.assertEquals(-1, verifier.mismatch());
+        Assert.assertTrue("Verifier should be complete", verifier.isComplete());
+    }
+
+    @Test
+    public void testVerifierMismatch() {
+        TestPayload payload = new TestPayload(42, 1000);
+        TestPayload.Verifier verifier = payload.verifier();
+        verifier.handle(chunk(payload, 0, 500));
+        Assert.assertTrue("Verifier shouldn't be complete", !verifier.isComplete());
+        byte[] bytes = new byte[500];
+        payload.getBytes(500, bytes, 0, 500);
+        bytes[123]++;
+        verifier.handle(new Buffer(bytes));
+        Assert.assertEquals(623, verifier.mismatch());
+        Assert.assertTrue("Verifier shouldn't be complete", !verifier.isComplete());
+    }
+
+    @Test
+    public void testVerifierTooLong() {
+        TestPayload payload = new TestPayload(42, 1000);
+        TestPayload.Verifier verifier = payload.verifier();
+        verifier.handle(chunk(payload, 0, 1000));
+        verifier.handle(new Buffer(new byte[1]));
+        Assert.assertEquals(1000, verifier.mismatch());
+        Assert.assertTrue("Verifier shouldn't be complete", !verifier.isComplete());
+    }
+
+    @Test
+    public void testVerifierChunkPastEnd() {
+        TestPayload payload = new TestPayload(42, 1000);
+        TestPayload.Verifier verifier = payload.verifier();
+        verifier.handle(chunk(payload, 0, 900));
+        byte[] bytes = new byte[200];
+        payload.getBytes(900, bytes, 0, 100);
+        verifier.handle(new Buffer(bytes));
+        // The bytes within the payload all match, so the first mismatch is its end
+        Assert.assertEquals(1000, verifier.mismatch());
+
+        verifier = payload.verifier();
+        verifier.handle(chunk(payload, 0, 900));
+        bytes[5]++;
+        verifier.handle(new Buffer(bytes));
+        Assert.assertEquals(905, verifier.mismatch());
+        Assert.assertTrue("Verifier shouldn't be complete", !verifier.isComplete());
+    }
+
+    @Test
+    public void testReadStream() throws InterruptedException {
+        final TestPayload payload = new TestPayload(42, 10000);
+        final TestPayload.Verifier verifier = payload.verifier();
+        final AtomicInteger chunks = new AtomicInteger();
+        final CountDownLatch ended = new CountDownLatch(1);
+        vertx.runOnContext(new Handler<Void>() {
+            public void handle(Void v) {
+                payload.readStream(vertx, 1000).dataHandler(new Handler<Buffer>() {
+                    public void handle(Buffer chunk) {
+                        chunks.incrementAndGet();
+                        verifier.handle(chunk);
+                    }
+                }).endHandler(new Handler<Void>() {
+                    public void handle(Void v) {
+                        ended.countDown();
+                    }
+                });
+            }
+        });
+        Assert.assertTrue("Stream should have ended", ended.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(10, chunks.get());
+        Assert.assertTrue("Verifier should be complete", verifier.isComplete());
+    }
+
+    @Test
+    public void testEmptyReadStreamEnds() throws InterruptedException {
+        final TestPayload payload = new TestPayload(42, 0);
+        final AtomicInteger chunks = new AtomicInteger();
+        final CountDownLatch ended = new CountDownLatch(1);
+        vertx.runOnContext(new Handler<Void>() {
+            public void handle(Void v) {
+                final TestPayload.PayloadReadStream stream = payload.readStream(vertx, 1000);
+                stream.dataHandler(new Handler<Buffer>() {
+                    public void handle(Buffer chunk) {
+                        chunks.incrementAndGet();
+                    }
+                });
+                // Only set once the stream is exhausted
+                vertx.setTimer(100, new Handler<Long>() {
+                    public void handle(Long timerID) {
+                        stream.endHandler(new Handler<Void>() {
+                            public void handle(Void v) {
+                                ended.countDown();
+                            }
+                        });
+                    }
+                });
+            }
+        });
+        Assert.assertTrue("Stream should have ended", ended.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(0, chunks.get());
+    }
+
+    @Test
+    public void testPauseResume() throws InterruptedException {
+        final TestPayload payload = new TestPayload(42, 10000);
+        final TestPayload.Verifier verifier = payload.verifier();
+        final AtomicInteger whilePaused = new AtomicInteger();
+        final CountDownLatch ended = new CountDownLatch(1);
+        vertx.runOnContext(new Handler<Void>() {
+            public void handle(Void v) {
+                final TestPayload.PayloadReadStream stream = payload.readStream(vertx, 1000);
+                stream.dataHandler(new Handler<Buffer>() {
+                    boolean paused;
+                    public void handle(Buffer chunk) {
+                        if (paused) {
+                            whilePaused.incrementAndGet();
+                        }
+                        verifier.handle(chunk);
+                        // A slow WriteStream whose queue is full after every chunk and drains a little later
+                        paused = true;
+                        stream.pause();
+                        vertx.setTimer(10, new Handler<Long>() {
+                            public void handle(Long timerID) {
+                                paused = false;
+                                stream.resume();
+                            }
+                        });
+                    }
+                }).endHandler(new Handler<Void>() {
+                    public void handle(Void v) {
+                        ended.countDown();
+                    }
+                });
+            }
+        });
+        Assert.assertTrue("Stream should have ended", ended.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals("Chunks delivered while paused", 0, whilePaused.get());
+        Assert.assertTrue("Verifier should be complete", verifier.isComplete());
+    }
+
+    @Test
+    public void testPausedStreamDeliversNothing() throws InterruptedException {
+        final TestPayload payload = new TestPayload(42, 10000);
+        final AtomicInteger chunks = new AtomicInteger();
+        final CountDownLatch checked = new CountDownLatch(1);
+        final AtomicInteger beforeResume = new AtomicInteger();
+        final CountDownLatch ended = new CountDownLatch(1);
+        vertx.runOnContext(new Handler<Void>() {
+            public void handle(Void v) {
+                final TestPayload.PayloadReadStream stream = payload.readStream(vertx, 1000);
+                stream.pause();
+                stream.dataHandler(new Handler<Buffer>() {
+                    public void handle(Buffer chunk) {
+                        chunks.incrementAndGet();
+                    }
+                }).endHandler(new Handler<Void>() {
+                    public void handle(Void v) {
+                        ended.countDown();
+                    }
+                });
+                vertx.setTimer(200, new Handler<Long>() {
+                    public void handle(Long timerID) {
+                        beforeResume.set(chunks.get());
+                        checked.countDown();
+                        stream.resume();
+                    }
+                });
+            }
+        });
+        Assert.assertTrue(checked.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals("Chunks delivered before resume", 0, beforeResume.get());
+        Assert.assertTrue("Stream should have ended", ended.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(10, chunks.get());
+    }
+
+    private static Buffer chunk(TestPayload payload, long offset, int size) {
+        byte[] bytes = new byte[size];
+        payload.getBytes(offset, bytes, 0, size);
+        return new Buffer(bytes);
+    }
+}
@@ -0,0 +1,55 @@
+package org.vertx.testtools;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.annotation.Annotation;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for TestSummary
+ */
+public class TestSummaryTest {
+
+    @Test
+    public void testTotals() {
+        TestSummary summary = new TestSummary();
+        summary.add("Foo#a", timings(10, 20, 30));
+        summary.add("Foo#b", timings(1, 2, 3));
+        Assert.assertEquals("2 tests, deploy 11 ms, run 22 ms, undeploy 33 ms", summary.totals());
+    }
+
+    @Test
+    public void testHistogramAndSlowest() {
+        TestSummary summary = new TestSummary();
+        summary.add("Foo#fast", timings(0, 5, 0));
+        summary.add("Foo#medium", timings(50, 200, 50));
+        summary.add("Foo#slow", timings(0, 20000, 0));
+        String report = summary.format(2);
+        Assert.assertTrue(report, report.contains("  < 10 ms: 1\n"));
+        Assert.assertTrue(report, report.contains("  < 100 ms: 0\n"));
+        Assert.assertTrue(report, report.contains("  < 1000 ms: 1\n"));
+        Assert.assertTrue(report, report.contains("  >= 10000 ms: 1\n"));
+        Assert.assertTrue(report, report.endsWith("Slowest tests:\n  20000 ms Foo#slow\n  300 ms Foo#medium\n"));
+    }
+
+    private static TestTimings timings(final long deployMillis, final long runMillis, final long undeployMillis) {
+        return new TestTimings() {
+            public long deployNanos() {
+                return TimeUnit.MILLISECONDS.toNanos(deployMillis);
+            }
+            public long runNanos() {
+                return TimeUnit.MILLISECONDS.toNanos(runMillis);
+            }
+            public long undeployNanos() {
+                return TimeUnit.MILLISECONDS.toNanos(undeployMillis);
+            }
+            public long eventBusNanos() {
+                return 0;
+            }
+            public Class<? extends Annotation> annotationType() {
+                return TestTimings.class;
+            }
+        };
+    }
+}
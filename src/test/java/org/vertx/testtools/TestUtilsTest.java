@@ -5,6 +5,8 @@ import org.junit.Test;
 import org.vertx.java.core.buffer.Buffer;
 
 import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Random;
 
 /**
  * Tests for TestUtils
@@ -44,6 +46,32 @@ public class TestUtilsTest {
         }
     }
 
+    @Test
+    public void testGenerateRandomByteArraySeeded() {
+        byte[] array1 = TestUtils.generateRandomByteArray(1000, true, (byte) 65, new Random(42));
+        byte[] array2 = TestUtils.generateRandomByteArray(1000, true, (byte) 65, new Random(42));
+        Assert.assertTrue("Arrays from the same seed should be equal", TestUtils.byteArraysEqual(array1, array2));
+    }
+
+    @Test
+    public void testGenerateRandomByteArrayAvoidsEveryValue() {
+        // Every byte value can be avoided, including the ones at the ends of the range
+        for (int b = Byte.MIN_VALUE; b <= Byte.MAX_VALUE; b++) {
+            byte[] buffer = TestUtils.generateRandomByteArray(1000, true, (byte) b);
+            for (int i = 0; i < 1000; i++) {
+                Assert.assertTrue("Buffer shouldn't contain " + b, buffer[i] != (byte) b);
+            }
+        }
+    }
+
+    @Test
+    public void testRandomStringsSeeded() {
+        Assert.assertEquals(TestUtils.randomUnicodeString(1000, new Random(42)),
+            TestUtils.randomUnicodeString(1000, new Random(42)));
+        Assert.assertEquals(TestUtils.randomAlphaString(1000, new Random(42)),
+            TestUtils.randomAlphaString(1000, new Random(42)));
+    }
+
     @Test
     public void testRandomUnicodeString() {
         String string = TestUtils.randomUnicodeString(1000);
@@ -81,4 +109,23 @@ public class TestUtilsTest {
         array2 = array1.clone();
         Assert.assertTrue("Arrays should be equal", TestUtils.byteArraysEqual(array1, array2));
     }
+
+    @Test
+    public void testFirstMismatch() {
+        byte[] array1 = TestUtils.generateRandomByteArray(1000);
+        Assert.assertEquals(-1, TestUtils.firstMismatch(array1, array1.clone()));
+        Assert.assertEquals(-1, TestUtils.firstMismatch(new Buffer(array1), new Buffer(array1.clone())));
+        // In the middle of a word and in the tail after the last whole word
+        for (int i: new int[] {0, 7, 8, 500, 997, 999}) {
+            byte[] array2 = array1.clone();
+            array2[i]++;
+            Assert.assertEquals(i, TestUtils.firstMismatch(array1, array2));
+            Assert.assertEquals(i, TestUtils.firstMismatch(new Buffer(array1), new Buffer(array2)));
+        }
+        // One is a prefix of the other
+        byte[] prefix = Arrays.copyOf(array1, 998);
+        Assert.assertEquals(998, TestUtils.firstMismatch(array1, prefix));
+        Assert.assertEquals(998, TestUtils.firstMismatch(new Buffer(prefix), new Buffer(array1)));
+        Assert.assertTrue("Buffers should not be equal", !TestUtils.buffersEqual(new Buffer(prefix), new Buffer(array1)));
+    }
 }
@@ -0,0 +1,116 @@
+package org.vertx.testtools;
+
+import org.junit.Assert;
+import org.junit.ComparisonFailure;
+import org.junit.Test;
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Tests for ThrowableCodec
+ */
+public class ThrowableCodecTest {
+
+    private static Throwable roundTrip(Throwable t) {
+        // Go via a String as that's what happens when the failure goes over the event bus
+        return ThrowableCodec.decode(new JsonObject(ThrowableCodec.encode(t).encode()));
+    }
+
+    @Test
+    public void testAssertionError() {
+        AssertionError error = new AssertionError("oops");
+        Throwable decoded = roundTrip(error);
+        Assert.assertEquals(AssertionError.class, decoded.getClass());
+        Assert.assertEquals("oops", decoded.getMessage());
+        Assert.assertArrayEquals(error.getStackTrace(), decoded.getStackTrace());
+    }
+
+    @Test
+    public void testComparisonFailure() {
+        ComparisonFailure failure = new ComparisonFailure("values differ", "foo", "bar");
+        Throwable decoded = roundTrip(failure);
+        Assert.assertTrue("Should be a ComparisonFailure", decoded instanceof ComparisonFailure);
+        Assert.assertEquals("foo", ((ComparisonFailure) decoded).getExpected());
+        Assert.assertEquals("bar", ((ComparisonFailure) decoded).getActual());
+        Assert.assertEquals(failure.getMessage(), decoded.getMessage());
+    }
+
+    @Test
+    public void testNonSerializableCause() {
+        Exception cause = new NonSerializableException("cause");
+        Throwable decoded = roundTrip(new IllegalStateException("wrapper", cause));
+        Assert.assertEquals(IllegalStateException.class, decoded.getClass());
+        Assert.assertEquals("wrapper", decoded.getMessage());
+        Assert.assertNotNull("Cause should be kept", decoded.getCause());
+        Assert.assertEquals("cause", decoded.getCause().getMessage());
+    }
+
+    @Test
+    public void testUnknownClass() {
+        JsonObject json = ThrowableCodec.encode(new AssertionError("missing"));
+        json.putString("class", "com.acme.MissingAssertionError");
+        Throwable decoded = ThrowableCodec.decode(json);
+        Assert.assertTrue("Should still be an AssertionError", decoded instanceof AssertionError);
+        Assert.assertEquals("com.acme.MissingAssertionError: missing", decoded.toString());
+
+        json = ThrowableCodec.encode(new RuntimeException("missing"));
+        json.putString("class", "com.acme.MissingException");
+        decoded = ThrowableCodec.decode(json);
+        Assert.assertFalse("Should not be an AssertionError", decoded instanceof AssertionError);
+        Assert.assertEquals("com.acme.MissingException: missing", decoded.toString());
+    }
+
+    @Test
+    public void testNullMessage() {
+        Throwable decoded = roundTrip(new NullPointerException());
+        Assert.assertEquals(NullPointerException.class, decoded.getClass());
+        Assert.assertNull(decoded.getMessage());
+    }
+
+    @Test
+    public void testSuppressed() {
+        Exception e = new Exception("main");
+        e.addSuppressed(new IllegalArgumentException("suppressed"));
+        Throwable decoded = roundTrip(e);
+        Assert.assertEquals(1, decoded.getSuppressed().length);
+        Assert.assertEquals("suppressed", decoded.getSuppressed()[0].getMessage());
+    }
+
+    @Test
+    public void testDeepCauseChainTruncated() {
+        Throwable t = new RuntimeException("0");
+        for (int i = 1; i < ThrowableCodec.MAX_DEPTH + 10; i++) {
+            t = new RuntimeException(String.valueOf(i), t);
+        }
+        Throwable decoded = roundTrip(t);
+        int depth = 1;
+        while (decoded.getCause() != null) {
+            decoded = decoded.getCause();
+            depth++;
+        }
+        Assert.assertEquals(ThrowableCodec.MAX_DEPTH, depth);
+        // The last one sent says that more were left out
+        Assert.assertEquals(1, decoded.getSuppressed().length);
+        Assert.assertEquals(ThrowableCodec.TRUNCATED_MESSAGE, decoded.getSuppressed()[0].getMessage());
+    }
+
+    @Test
+    public void testManySuppressedKept() {
+        // More nodes than MAX_DEPTH in all, but none of them deep
+        Exception t = new Exception("top");
+        for (int i = 0; i < ThrowableCodec.MAX_DEPTH * 2; i++) {
+            t.addSuppressed(new Exception("suppressed " + i, new Exception("cause " + i)));
+        }
+        Throwable decoded = roundTrip(t);
+        Assert.assertEquals(ThrowableCodec.MAX_DEPTH * 2, decoded.getSuppressed().length);
+        Throwable last = decoded.getSuppressed()[ThrowableCodec.MAX_DEPTH * 2 - 1];
+        Assert.assertEquals("cause " + (ThrowableCodec.MAX_DEPTH * 2 - 1), last.getCause().getMessage());
+    }
+
+    private static class NonSerializableException extends Exception {
+        private final Object state = new Object();
+
+        NonSerializableException(String message) {
+            super(message);
+        }
+    }
+}